@@ -19,6 +19,7 @@ public class CorsConfig {
                 "http://localhost:5500"));
         config.addAllowedMethod("*");
         config.addAllowedHeader("*");
+        config.addExposedHeader("X-Next-Cursor");
         config.setAllowCredentials(true);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
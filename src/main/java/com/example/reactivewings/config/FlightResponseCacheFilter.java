@@ -0,0 +1,177 @@
+package com.example.reactivewings.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import com.example.reactivewings.service.FlightBoard;
+import com.example.reactivewings.service.FlightBoardService;
+import com.example.reactivewings.utils.FlightsControllerUtils;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Serves repeated JSON flight queries from fully serialised bodies. Entries are keyed by path and
+ * sorted query parameters, hold the plain and gzipped body, and belong to one board generation:
+ * the cache is emptied whenever a new board is swapped in, so hits never outlive a sync.
+ */
+@Component
+public class FlightResponseCacheFilter implements WebFilter {
+    private static final Logger log = LoggerFactory.getLogger(FlightResponseCacheFilter.class);
+
+    private static final List<String> CACHEABLE_PATHS = List.of("/flights/", "/flights/search");
+    private static final List<String> CACHED_HEADERS = List.of(
+        HttpHeaders.CONTENT_TYPE, HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED, HttpHeaders.CACHE_CONTROL,
+        HttpHeaders.VARY, FlightsControllerUtils.NEXT_CURSOR_HEADER);
+
+    private final FlightBoardService boardService;
+    private final Map<String, CachedResponse> cache = new ConcurrentHashMap<>();
+
+    @Value("${flight-cache.max-entries:128}")
+    private int maxEntries;
+
+    @Value("${flight-cache.max-body-bytes:4194304}")
+    private int maxBodyBytes;
+
+    public FlightResponseCacheFilter(FlightBoardService boardService) {
+        this.boardService = boardService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void invalidateOnBoardChange() {
+        boardService.boards().subscribe(board -> {
+            cache.clear();
+            log.debug("Response cache cleared for board generation {}", board.generation());
+        });
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        FlightBoard board = boardService.current();
+        if (board == null || !isCacheable(request)) {
+            return chain.filter(exchange);
+        }
+
+        String key = cacheKey(request);
+        CachedResponse cached = cache.get(key);
+        if (cached != null && cached.generation() == board.generation()) {
+            return write(exchange, cached);
+        }
+
+        return chain.filter(exchange.mutate().response(new CapturingResponse(exchange.getResponse(), key, board.generation())).build());
+    }
+
+    private Mono<Void> write(ServerWebExchange exchange, CachedResponse cached) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().putAll(cached.headers());
+        if (exchange.checkNotModified(cached.headers().getETag(), Instant.ofEpochMilli(cached.headers().getLastModified()))) {
+            return response.setComplete();
+        }
+
+        boolean gzip = acceptsGzip(exchange.getRequest());
+        byte[] body = gzip ? cached.gzipped() : cached.body();
+        if (gzip) response.getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        response.getHeaders().setContentLength(body.length);
+        // wrap() hands the cached array to the server without copying it
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+
+    private static boolean isCacheable(ServerHttpRequest request) {
+        if (request.getMethod() != HttpMethod.GET || !CACHEABLE_PATHS.contains(request.getPath().value())) {
+            return false;
+        }
+        // Only JSON bodies are cached; streaming and Smile variants are negotiated on Accept
+        String accept = request.getHeaders().getFirst(HttpHeaders.ACCEPT);
+        return accept == null || !(accept.contains("ndjson") || accept.contains("event-stream") || accept.contains("smile"));
+    }
+
+    // Parameter order doesn't matter to the controller, so it doesn't split entries
+    private static String cacheKey(ServerHttpRequest request) {
+        return request.getPath().value() + "?" + new TreeMap<>(request.getQueryParams());
+    }
+
+    private static boolean acceptsGzip(ServerHttpRequest request) {
+        String acceptEncoding = request.getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(body.length / 4, 64));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private record CachedResponse(long generation, HttpHeaders headers, byte[] body, byte[] gzipped) {}
+
+    // Joins the body the controller writes, stores it for the generation it was built from, then writes it
+    private class CapturingResponse extends ServerHttpResponseDecorator {
+        private final String key;
+        private final long generation;
+
+        CapturingResponse(ServerHttpResponse delegate, String key, long generation) {
+            super(delegate);
+            this.key = key;
+            this.generation = generation;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            boolean ok = getStatusCode() == null || getStatusCode().isSameCodeAs(HttpStatus.OK);
+            if (!ok || getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+                return super.writeWith(body);
+            }
+
+            return DataBufferUtils.join(Flux.from(body))
+                .flatMap(joined -> {
+                    byte[] bytes = new byte[joined.readableByteCount()];
+                    joined.read(bytes);
+                    DataBufferUtils.release(joined);
+                    store(bytes);
+                    return super.writeWith(Mono.just(bufferFactory().wrap(bytes)));
+                })
+                .switchIfEmpty(Mono.defer(() -> super.writeWith(Flux.empty())));
+        }
+
+        private void store(byte[] bytes) {
+            if (bytes.length > maxBodyBytes || (cache.size() >= maxEntries && !cache.containsKey(key))) return;
+
+            HttpHeaders headers = new HttpHeaders();
+            CACHED_HEADERS.forEach(name -> {
+                List<String> values = getHeaders().get(name);
+                if (values != null) headers.put(name, values);
+            });
+            cache.put(key, new CachedResponse(generation, HttpHeaders.readOnlyHttpHeaders(headers), bytes, gzip(bytes)));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.reactivewings.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.example.reactivewings.service.LegacySendGridTransport;
+import com.example.reactivewings.service.MailTransport;
+import com.example.reactivewings.service.WebClientMailTransport;
+
+// email.transport=webclient (default) uses the reactive client, legacy keeps the SendGrid SDK on virtual threads
+@Configuration
+public class MailTransportConfig {
+    @Value("${SENDGRID_API_KEY:}")
+    private String apiKey;
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "email.transport", havingValue = "webclient", matchIfMissing = true)
+    public MailTransport webClientMailTransport(WebClient.Builder webClientBuilder,
+                                                @Value("${email.sendgrid.base-url:https://api.sendgrid.com}") String baseUrl,
+                                                @Value("${email.max-connections:8}") int maxConnections) {
+        return new WebClientMailTransport(webClientBuilder, baseUrl, apiKey, maxConnections);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "email.transport", havingValue = "legacy")
+    public MailTransport legacySendGridTransport() {
+        return new LegacySendGridTransport(apiKey);
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.reactivewings.config;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Declares the indexes behind every query the app issues and runs pending data migrations in order.
+ * It runs while the context starts, before the scheduler fires the first sync and before the
+ * board and subscription index are loaded, so those never see the old document shape; a migration
+ * that fails or times out fails startup.
+ */
+@Component
+public class MongoSchemaInitializer implements InitializingBean {
+    private static final Logger log = LoggerFactory.getLogger(MongoSchemaInitializer.class);
+
+    private static final String FLIGHTS = "flights";
+    private static final String USERS = "users";
+    private static final String SUBSCRIPTIONS = "subscriptions";
+    private static final String OUTBOX = "notification_outbox";
+    private static final String MIGRATIONS = "schema_migrations";
+    private static final String TYPED_FLIGHT_TIMES = "typed-flight-times";
+    private static final String SUBSCRIPTIONS_COLLECTION = "subscriptions-collection";
+    private static final String SUBSCRIPTION_EXPIRY = "subscription-expiry";
+    private static final String UNDATED_SUBSCRIPTION_EXPIRY = "undated-subscription-expiry";
+    private static final String UNIQUE_FLIGHT_IDS = "unique-flight-ids";
+    private static final String SUBSCRIPTION_HISTORY = "subscription_history";
+
+    // Sync upserts and removals; unique, so an upsert by a fenced-off sync fails instead of inserting a second copy
+    private static final IndexDefinition FLIGHT_ID_INDEX = new Index().on("flightId", Sort.Direction.ASC)
+        .unique()
+        .partial(PartialIndexFilter.of(new Document("flightId", new Document("$type", "number"))));
+
+    private static final List<IndexDefinition> FLIGHT_INDEXES = List.of(
+        // Listing order and keyset cursors; its lastUpdated prefix also serves the replace-mode cleanup
+        new Index().on("lastUpdated", Sort.Direction.DESC)
+            .on("scheduledTime", Sort.Direction.DESC)
+            .on("flightId", Sort.Direction.DESC),
+        // Search filters: equality fields first, then the date range
+        new Index().on("airlineCode", Sort.Direction.ASC)
+            .on("flightNumber", Sort.Direction.ASC)
+            .on("scheduledTime", Sort.Direction.ASC),
+        new Index().on("direction", Sort.Direction.ASC).on("scheduledTime", Sort.Direction.ASC),
+        new Index().on("cityName", Sort.Direction.ASC).on("scheduledTime", Sort.Direction.ASC),
+        new Index().on("statusEn", Sort.Direction.ASC).on("lastUpdated", Sort.Direction.DESC),
+        new Index().on("scheduledTime", Sort.Direction.ASC),
+        new Index().on("estimatedTime", Sort.Direction.ASC));
+
+    private static final List<IndexDefinition> SUBSCRIPTION_INDEXES = List.of(
+        // Subscription match on the flight key
+        new Index().on("airlineCode", Sort.Direction.ASC)
+            .on("flightNumber", Sort.Direction.ASC)
+            .on("scheduledTime", Sort.Direction.ASC),
+        // A user's subscriptions, and unsubscribe by flight
+        new Index().on("userId", Sort.Direction.ASC)
+            .on("airlineCode", Sort.Direction.ASC)
+            .on("flightNumber", Sort.Direction.ASC),
+        // Archiver batches
+        new Index().on("expiresAt", Sort.Direction.ASC));
+
+    private static final List<IndexDefinition> OUTBOX_INDEXES = List.of(
+        // Drainer claims: pending entries in availability order
+        new Index().on("status", Sort.Direction.ASC).on("availableAt", Sort.Direction.ASC),
+        // Window extension and group claims
+        new Index().on("groupKey", Sort.Direction.ASC).on("status", Sort.Direction.ASC),
+        new Index().on("leaseToken", Sort.Direction.ASC).sparse());
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Value("${mongo-schema.startup-timeout-ms:120000}")
+    private long startupTimeoutMs;
+
+    @Value("${outbox.retention-hours:72}")
+    private long outboxRetentionHours;
+
+    @Value("${subscriptions.retention-hours:24}")
+    private long subscriptionRetentionHours;
+
+    @Value("${subscriptions.undated-retention-days:30}")
+    private long undatedRetentionDays;
+
+    @Value("${subscriptions.history-retention-days:365}")
+    private long historyRetentionDays;
+
+    public MongoSchemaInitializer(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        migrate(TYPED_FLIGHT_TIMES, migrateFlightTimes())
+            .then(migrate(SUBSCRIPTIONS_COLLECTION, migrateSubscriptions()))
+            .then(migrate(SUBSCRIPTION_EXPIRY, backfillSubscriptionExpiry()))
+            .then(migrate(UNDATED_SUBSCRIPTION_EXPIRY, backfillUndatedSubscriptionExpiry()))
+            .then(migrate(UNIQUE_FLIGHT_IDS, uniqueFlightIds()))
+            // Fencing relies on it, so unlike the others it must exist
+            .then(mongoTemplate.indexOps(FLIGHTS).ensureIndex(FLIGHT_ID_INDEX))
+            .thenMany(ensureIndexes(FLIGHTS, FLIGHT_INDEXES))
+            .thenMany(ensureIndexes(SUBSCRIPTIONS, SUBSCRIPTION_INDEXES))
+            .thenMany(ensureIndexes(SUBSCRIPTION_HISTORY, List.of(
+                new Index().on("userId", Sort.Direction.ASC),
+                new Index().on("archivedAt", Sort.Direction.ASC).expire(Duration.ofDays(historyRetentionDays)))))
+            .thenMany(ensureIndexes(OUTBOX, OUTBOX_INDEXES))
+            // Sent entries are kept long enough to absorb replays of the same change, then expire
+            .thenMany(ensureIndexes(OUTBOX, List.of(
+                new Index().on("sentAt", Sort.Direction.ASC).expire(Duration.ofHours(outboxRetentionHours)))))
+            .then()
+            .timeout(Duration.ofMillis(startupTimeoutMs))
+            // A failed migration stops startup; the code after it would read documents in the old shape
+            .doOnError(error -> log.error("Mongo schema initialisation failed: {}", error.getMessage()))
+            .block();
+    }
+
+    // Secondary indexes only speed queries up, so one that can't be created is logged and skipped
+    private Flux<String> ensureIndexes(String collection, List<IndexDefinition> indexes) {
+        return Flux.fromIterable(indexes)
+            .concatMap(index -> mongoTemplate.indexOps(collection).ensureIndex(index)
+                .doOnNext(name -> log.debug("Ensured index {}.{}", collection, name))
+                .onErrorResume(error -> {
+                    log.warn("Could not create index on {}: {}", collection, error.getMessage());
+                    return Mono.empty();
+                }));
+    }
+
+    // Runs a migration once per database and records it in the migrations collection
+    private Mono<Void> migrate(String id, Mono<Long> migration) {
+        return mongoTemplate.exists(Query.query(Criteria.where("_id").is(id)), MIGRATIONS)
+            .flatMap(done -> {
+                if (done) return Mono.<Void>empty();
+                return migration
+                    .doOnNext(migrated -> log.info("Migration {} updated {} documents", id, migrated))
+                    .then(mongoTemplate.insert(new Document("_id", id).append("appliedAt", LocalDateTime.now()), MIGRATIONS))
+                    .then();
+            });
+    }
+
+    // Converts scheduledTime/estimatedTime strings into dates on flights and on embedded subscriptions
+    private Mono<Long> migrateFlightTimes() {
+        Document stringTimes = new Document("$or", List.of(
+            new Document("scheduledTime", new Document("$type", "string")),
+            new Document("estimatedTime", new Document("$type", "string"))));
+        List<Document> flightPipeline = List.of(new Document("$set", new Document()
+            .append("scheduledTime", toDate("$scheduledTime"))
+            .append("estimatedTime", toDate("$estimatedTime"))));
+
+        Document stringSubscriptionTimes = new Document("$or", List.of(
+            new Document("subscriptions.scheduledTime", new Document("$type", "string")),
+            new Document("subscriptions.estimatedTime", new Document("$type", "string"))));
+        List<Document> userPipeline = List.of(new Document("$set", new Document("subscriptions",
+            new Document("$map", new Document()
+                .append("input", "$subscriptions")
+                .append("as", "sub")
+                .append("in", new Document("$mergeObjects", List.of("$$sub", new Document()
+                    .append("scheduledTime", toDate("$$sub.scheduledTime"))
+                    .append("estimatedTime", toDate("$$sub.estimatedTime"))))))))));
+
+        return updateMany(FLIGHTS, stringTimes, flightPipeline)
+            .zipWith(updateMany(USERS, stringSubscriptionTimes, userPipeline), Long::sum);
+    }
+
+    /*
+     * Moves subscriptions embedded in users into their own collection, keeping only the key, the
+     * display fields and the notified state. Ids are built like Subscription.idOf, and $merge keeps
+     * existing documents, so a rerun after a partial failure neither duplicates nor overwrites.
+     */
+    private Mono<Long> migrateSubscriptions() {
+        String zone = ZoneId.systemDefault().getId();
+        Document subscription = new Document()
+            .append("_id", new Document("$concat", List.of(
+                "$_id", "|",
+                new Document("$ifNull", List.of("$subscriptions.airlineCode", "")), "|",
+                new Document("$ifNull", List.of("$subscriptions.flightNumber", "")), "|",
+                new Document("$ifNull", List.of(new Document("$dateToString", new Document()
+                    .append("date", "$subscriptions.scheduledTime")
+                    .append("format", "%Y-%m-%dT%H:%M:%S")
+                    .append("timezone", zone)), "")))))
+            .append("userId", "$_id")
+            .append("createdAt", "$$NOW");
+        List.of("airlineCode", "flightNumber", "scheduledTime", "airportCode", "airlineName", "direction", "cityHe", "cityEn",
+                "estimatedTime", "terminal", "counters", "checkinZone", "statusHe", "contentHash", "lastUpdated")
+            .forEach(field -> subscription.append(field, "$subscriptions." + field));
+
+        List<Document> pipeline = List.of(
+            new Document("$match", new Document("subscriptions.0", new Document("$exists", true))),
+            new Document("$unwind", "$subscriptions"),
+            new Document("$replaceWith", subscription),
+            new Document("$merge", new Document()
+                .append("into", SUBSCRIPTIONS)
+                .append("on", "_id")
+                .append("whenMatched", "keepExisting")
+                .append("whenNotMatched", "insert")));
+
+        return mongoTemplate.getCollection(USERS)
+            .flatMap(users -> Mono.from(users.aggregate(pipeline).toCollection()))
+            .then(mongoTemplate.getCollection(SUBSCRIPTIONS).flatMap(subscriptions -> Mono.from(subscriptions.countDocuments())))
+            .flatMap(moved -> updateMany(USERS, new Document("subscriptions", new Document("$exists", true)),
+                    List.of(new Document("$unset", "subscriptions")))
+                .thenReturn(moved));
+    }
+
+    // Subscriptions created before expiry existed get scheduledTime + retention
+    private Mono<Long> backfillSubscriptionExpiry() {
+        Document missing = new Document("expiresAt", new Document("$exists", false))
+            .append("scheduledTime", new Document("$type", "date"));
+        List<Document> pipeline = List.of(new Document("$set", new Document("expiresAt",
+            new Document("$add", List.of("$scheduledTime", Duration.ofHours(subscriptionRetentionHours).toMillis())))));
+        return updateMany(SUBSCRIPTIONS, missing, pipeline);
+    }
+
+    // Subscriptions without a scheduled time would never expire; they get createdAt (or now) + the undated retention
+    private Mono<Long> backfillUndatedSubscriptionExpiry() {
+        Document missing = new Document("expiresAt", new Document("$exists", false));
+        List<Document> pipeline = List.of(new Document("$set", new Document("expiresAt",
+            new Document("$add", List.of(new Document("$ifNull", List.of("$createdAt", "$$NOW")),
+                Duration.ofDays(undatedRetentionDays).toMillis())))));
+        return updateMany(SUBSCRIPTIONS, missing, pipeline);
+    }
+
+    /*
+     * Keeps the most recently updated copy of every flightId and replaces the old non-unique index
+     * with the unique one. The migration is only recorded once the unique index exists, so a failed
+     * run deduplicates again on the next start.
+     */
+    private Mono<Long> uniqueFlightIds() {
+        List<Document> pipeline = List.of(
+            new Document("$match", new Document("flightId", new Document("$type", "number"))),
+            new Document("$sort", new Document("lastUpdated", -1)),
+            new Document("$group", new Document("_id", "$flightId")
+                .append("ids", new Document("$push", "$_id"))
+                .append("copies", new Document("$sum", 1))),
+            new Document("$match", new Document("copies", new Document("$gt", 1))));
+
+        return mongoTemplate.getCollection(FLIGHTS)
+            .flatMapMany(flights -> Flux.from(flights.aggregate(pipeline).allowDiskUse(true))
+                .flatMapIterable(duplicates -> {
+                    List<Object> ids = duplicates.getList("ids", Object.class);
+                    return ids.subList(1, ids.size());
+                })
+                .buffer(1000)
+                .concatMap(ids -> Mono.from(flights.deleteMany(new Document("_id", new Document("$in", ids)))))
+                .map(result -> result.getDeletedCount()))
+            .reduce(0L, Long::sum)
+            // A missing old index is fine; any other problem with it makes the create below fail
+            .flatMap(removed -> mongoTemplate.indexOps(FLIGHTS).dropIndex("flightId_1")
+                .onErrorResume(error -> Mono.empty())
+                .then(mongoTemplate.indexOps(FLIGHTS).ensureIndex(FLIGHT_ID_INDEX))
+                .thenReturn(removed));
+    }
+
+    private Mono<Long> updateMany(String collection, Document filter, List<Document> pipeline) {
+        return mongoTemplate.getCollection(collection)
+            .flatMap(target -> Mono.from(target.updateMany(filter, pipeline)))
+            .map(result -> result.getModifiedCount());
+    }
+
+    // Strings are read in the JVM zone because that is how the driver maps LocalDateTime to BSON dates
+    private static Document toDate(String field) {
+        return new Document("$cond", List.of(
+            new Document("$eq", List.of(new Document("$type", field), "string")),
+            new Document("$dateFromString", new Document()
+                .append("dateString", field)
+                .append("timezone", ZoneId.systemDefault().getId())
+                .append("onError", null)
+                .append("onNull", null)),
+            field));
+    }
+}
@@ -1,14 +1,29 @@
 package com.example.reactivewings.controller;
 
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
-import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
 
 import com.example.reactivewings.model.Flight;
+import com.example.reactivewings.model.FlightBoardFrame;
+import com.example.reactivewings.model.FlightCursor;
+import com.example.reactivewings.model.FlightSearchCriteria;
+import com.example.reactivewings.service.FlightBoard;
+import com.example.reactivewings.service.FlightBoardService;
+import com.example.reactivewings.service.LiveBoardService;
 import com.example.reactivewings.utils.FlightsControllerUtils;
 import reactor.core.publisher.Flux;
 
@@ -16,20 +31,40 @@ import reactor.core.publisher.Flux;
 @RequestMapping("/flights")
 public class FlightsController {
     private final ReactiveMongoTemplate mongoTemplate;
+    private final FlightBoardService boardService;
+    private final LiveBoardService liveBoardService;
+
+    // How long clients and CDNs may reuse a response before revalidating it with its ETag
+    @Value("${flight-cache.max-age-seconds:0}")
+    private long cacheMaxAgeSeconds;
 
-    public FlightsController(ReactiveMongoTemplate mongoTemplate) {
+    public FlightsController(ReactiveMongoTemplate mongoTemplate,
+                             FlightBoardService boardService,
+                             LiveBoardService liveBoardService) {
         this.mongoTemplate = mongoTemplate;
+        this.boardService = boardService;
+        this.liveBoardService = liveBoardService;
     }
 
     @GetMapping("/")
-    public Flux<Flight> getFlights(@RequestParam(defaultValue = "0") int page,
-                                    @RequestParam(defaultValue = "100") int size) {
-        Query query = FlightsControllerUtils.buildSearchQuery(page, size);
-        return mongoTemplate.find(query, Flight.class);
+    public Flux<Object> getFlights(@RequestParam(defaultValue = "0") int page,
+                                    @RequestParam(defaultValue = "100") int size,
+                                    @RequestParam(required = false) String cursor,
+                                    @RequestParam(required = false) String fields,
+                                    ServerWebExchange exchange) {
+        return search(FlightSearchCriteria.ALL, page, size, cursor, FlightsControllerUtils.parseFields(fields), exchange);
+    }
+
+    @GetMapping(value = "/", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<Object> streamFlights(@RequestParam(defaultValue = "0") int page,
+                                      @RequestParam(defaultValue = "0") int size,
+                                      @RequestParam(required = false) String fields,
+                                      ServerWebExchange exchange) {
+        return stream(FlightSearchCriteria.ALL, page, size, FlightsControllerUtils.parseFields(fields), exchange);
     }
 
     @GetMapping("/search")
-    public Flux<Flight> searchFlight(
+    public Flux<Object> searchFlight(
         @RequestParam(required = false) String airlineCode,
         @RequestParam(required = false) String flightNumber,
         @RequestParam(required = false) String scheduledDate,
@@ -38,22 +73,139 @@ public class FlightsController {
         @RequestParam(required = false) String city,
         @RequestParam(required = false) String status,
         @RequestParam(defaultValue = "0") int page,
-        @RequestParam(defaultValue = "100") int size
+        @RequestParam(defaultValue = "100") int size,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(required = false) String fields,
+        ServerWebExchange exchange
+    ) {
+        FlightSearchCriteria criteria = FlightSearchCriteria.of(
+            airlineCode, flightNumber,
+            FlightsControllerUtils.parseDate(scheduledDate), FlightsControllerUtils.parseDate(estimatedDate),
+            direction, city, status);
+        return search(criteria, page, size, cursor, FlightsControllerUtils.parseFields(fields), exchange);
+    }
+
+    @GetMapping(value = "/search", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<Object> streamSearch(
+        @RequestParam(required = false) String airlineCode,
+        @RequestParam(required = false) String flightNumber,
+        @RequestParam(required = false) String scheduledDate,
+        @RequestParam(required = false) String estimatedDate,
+        @RequestParam(required = false) String direction,
+        @RequestParam(required = false) String city,
+        @RequestParam(required = false) String status,
+        @RequestParam(defaultValue = "0") int page,
+        @RequestParam(defaultValue = "0") int size,
+        @RequestParam(required = false) String fields,
+        ServerWebExchange exchange
+    ) {
+        FlightSearchCriteria criteria = FlightSearchCriteria.of(
+            airlineCode, flightNumber,
+            FlightsControllerUtils.parseDate(scheduledDate), FlightsControllerUtils.parseDate(estimatedDate),
+            direction, city, status);
+        return stream(criteria, page, size, FlightsControllerUtils.parseFields(fields), exchange);
+    }
+
+    @GetMapping(value = "/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<FlightBoardFrame>> liveBoard(
+        @RequestParam(required = false) String airlineCode,
+        @RequestParam(required = false) String flightNumber,
+        @RequestParam(required = false) String scheduledDate,
+        @RequestParam(required = false) String estimatedDate,
+        @RequestParam(required = false) String direction,
+        @RequestParam(required = false) String city,
+        @RequestParam(required = false) String status
     ) {
-        Query query = FlightsControllerUtils.buildSearchQuery(page, size);
-        
-        if (airlineCode != null) query.addCriteria(Criteria.where("airlineCode").is(airlineCode.toUpperCase()));
-        if (flightNumber != null) query.addCriteria(Criteria.where("flightNumber").is(flightNumber));
-        if (direction != null) query.addCriteria(Criteria.where("direction").is(direction.toUpperCase()));
-        if (city != null) query.addCriteria(Criteria.where("cityName").is(city.toUpperCase()));
-        if (status != null) query.addCriteria(Criteria.where("statusEn").is(status.toUpperCase()));
+        FlightSearchCriteria criteria = FlightSearchCriteria.of(
+            airlineCode, flightNumber,
+            FlightsControllerUtils.parseDate(scheduledDate), FlightsControllerUtils.parseDate(estimatedDate),
+            direction, city, status);
+        return liveBoardService.frames(criteria)
+            .map(frame -> ServerSentEvent.builder(frame)
+                .event(frame.type().name().toLowerCase())
+                .id(String.valueOf(frame.generation()))
+                .build());
+    }
+
+    // Any cursor parameter (empty for the first page) switches from page/size to keyset paging
+    private Flux<Object> search(FlightSearchCriteria criteria, int page, int size, String cursor, List<String> fields, ServerWebExchange exchange) {
+        FlightCursor after = cursor != null ? FlightsControllerUtils.parseCursor(cursor) : null;
+
+        // Served from the in-memory board; Mongo is only queried until the first board has been built
+        FlightBoard board = boardService.current();
+        if (notModified(board, exchange)) {
+            return Flux.empty();
+        }
+
+        if (cursor != null) {
+            return select(searchAfter(board, criteria, after, size, fields, exchange.getResponse()), fields);
+        }
+
+        if (board != null) {
+            return select(Flux.fromIterable(board.search(criteria,
+                FlightsControllerUtils.skip(page, size),
+                FlightsControllerUtils.limit(size))), fields);
+        }
+
+        Query query = FlightsControllerUtils.project(FlightsControllerUtils.buildSearchQuery(criteria, page, size), fields);
+        return select(mongoTemplate.find(query, Flight.class), fields);
+    }
+
+    // Emitted one element at a time as the client demands them, so neither side buffers the whole result
+    private Flux<Object> stream(FlightSearchCriteria criteria, int page, int size, List<String> fields, ServerWebExchange exchange) {
+        FlightBoard board = boardService.current();
+        if (notModified(board, exchange)) {
+            return Flux.empty();
+        }
 
-        if (scheduledDate != null)
-            query.addCriteria(Criteria.where("scheduledTime").regex(java.util.regex.Pattern.quote(scheduledDate)));
+        if (board != null) {
+            return select(Flux.fromIterable(board.search(criteria,
+                FlightsControllerUtils.streamSkip(page, size),
+                FlightsControllerUtils.streamLimit(size))), fields);
+        }
 
-        if (estimatedDate != null)
-            query.addCriteria(Criteria.where("estimatedTime").regex(java.util.regex.Pattern.quote(estimatedDate)));
+        Query query = FlightsControllerUtils.project(FlightsControllerUtils.buildStreamQuery(criteria, page, size), fields);
+        return select(mongoTemplate.find(query, Flight.class), fields);
+    }
+
+    private Flux<Flight> searchAfter(FlightBoard board, FlightSearchCriteria criteria, FlightCursor after, int size,
+                                     List<String> fields, ServerHttpResponse response) {
+        int limit = FlightsControllerUtils.limit(size);
+
+        if (board != null) {
+            List<Flight> flights = board.searchAfter(criteria, after, limit);
+            setNextCursor(flights, limit, response);
+            return Flux.fromIterable(flights);
+        }
+
+        Query query = FlightsControllerUtils.project(FlightsControllerUtils.buildKeysetQuery(criteria, after, size), fields);
+        return mongoTemplate.find(query, Flight.class)
+            .collectList()
+            .doOnNext(flights -> setNextCursor(flights, limit, response))
+            .flatMapMany(Flux::fromIterable);
+    }
+
+    // With fields= only the selected properties are serialised, in a stable order
+    private static Flux<Object> select(Flux<Flight> flights, List<String> fields) {
+        if (fields == null) return flights.cast(Object.class);
+        return flights.<Object>map(flight -> FlightsControllerUtils.selectFields(flight, fields));
+    }
+
+    // A response is fully determined by the board and the URL, so the board digest is the validator;
+    // a matching If-None-Match is answered with 304 before any query or serialisation
+    private boolean notModified(FlightBoard board, ServerWebExchange exchange) {
+        if (board == null) return false;
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        headers.setCacheControl(CacheControl.maxAge(Duration.ofSeconds(cacheMaxAgeSeconds)).cachePublic().mustRevalidate());
+        headers.setVary(List.of(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING));
+        return exchange.checkNotModified("W/\"" + board.digest() + "\"", board.modifiedAt());
+    }
 
-        return mongoTemplate.find(query, Flight.class);
+    private static void setNextCursor(List<Flight> flights, int limit, ServerHttpResponse response) {
+        if (limit > 0 && flights.size() == limit) {
+            response.getHeaders().set(FlightsControllerUtils.NEXT_CURSOR_HEADER,
+                FlightCursor.of(flights.get(flights.size() - 1)).encode());
+        }
     }
 }
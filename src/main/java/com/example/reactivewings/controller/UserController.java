@@ -1,19 +1,41 @@
 package com.example.reactivewings.controller;
 
 import java.security.Principal;
+import java.util.List;
+import java.util.Set;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
+import com.example.reactivewings.model.BulkSubscriptionRequest;
+import com.example.reactivewings.model.BulkUnsubscribeRequest;
 import com.example.reactivewings.model.Flight;
+import com.example.reactivewings.model.Subscription;
+import com.example.reactivewings.model.SubscriptionResult;
 import com.example.reactivewings.model.User;
+import com.example.reactivewings.model.UserInfo;
+import com.example.reactivewings.repo.SubscriptionRepository;
 import com.example.reactivewings.repo.UserRepository;
+import com.example.reactivewings.service.BulkSubscriptionService;
 import com.example.reactivewings.service.EmailSenderService;
+import com.example.reactivewings.service.FlightReminderScheduler;
+import com.example.reactivewings.service.SubscriptionArchiver;
+import com.example.reactivewings.service.SubscriptionIndex;
 import com.example.reactivewings.utils.UserControllerUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 
@@ -21,43 +43,88 @@ import reactor.core.publisher.Mono;
 @RequestMapping("/users")
 public class UserController {
     private final UserRepository userRepository;
+    private final SubscriptionRepository subscriptionRepository;
+    private final ReactiveMongoTemplate mongoTemplate;
     private final EmailSenderService emailSenderService;
+    private final SubscriptionIndex subscriptionIndex;
+    private final SubscriptionArchiver subscriptionArchiver;
+    private final BulkSubscriptionService bulkSubscriptionService;
+    private final FlightReminderScheduler flightReminders;
+
+    // Callers allowed to subscribe users other than themselves, e.g. a travel agency's service account
+    @Value("${subscriptions.bulk-agents:}")
+    private Set<String> bulkAgents;
 
     public UserController(UserRepository userRepository,
-                          EmailSenderService emailSenderService) {
+                          SubscriptionRepository subscriptionRepository,
+                          ReactiveMongoTemplate mongoTemplate,
+                          EmailSenderService emailSenderService,
+                          SubscriptionIndex subscriptionIndex,
+                          SubscriptionArchiver subscriptionArchiver,
+                          BulkSubscriptionService bulkSubscriptionService,
+                          FlightReminderScheduler flightReminders) {
         this.userRepository = userRepository;
+        this.subscriptionRepository = subscriptionRepository;
+        this.mongoTemplate = mongoTemplate;
         this.emailSenderService = emailSenderService;
+        this.subscriptionIndex = subscriptionIndex;
+        this.subscriptionArchiver = subscriptionArchiver;
+        this.bulkSubscriptionService = bulkSubscriptionService;
+        this.flightReminders = flightReminders;
     }
 
     @GetMapping("/user-info")
-    public Mono<User> getUserInfo(Principal principal) {
+    public Mono<UserInfo> getUserInfo(Principal principal) {
         String email = UserControllerUtils.extractEmail(principal);
 
-        return userRepository.findById(email)
-        .switchIfEmpty(userRepository.save(new User(email)));
+        return ensureUser(email, new Update())
+        .then(userInfo(email));
     }
 
+    // The subscription id is derived from user and flight, so a repeated subscribe is a no-op and confirms only once
     @PostMapping("/subscribe")
-    public Mono<User> subscribe(Principal principal, @RequestBody Flight subscription) {
+    public Mono<UserInfo> subscribe(Principal principal, @RequestBody Flight flight) {
         String email = UserControllerUtils.extractEmail(principal);
+        Subscription subscription = Subscription.of(email, flight);
+        subscription.setExpiresAt(subscriptionArchiver.expiryOf(subscription));
 
-        return userRepository.findById(email)
-        .switchIfEmpty(userRepository.save(new User(email)))
-        .flatMap(user -> {
-            user.getSubscriptions().add(subscription);
-            return userRepository.save(user);
+        return ensureUser(email, new Update())
+        .then(insertIfAbsent(subscription))
+        .flatMap(inserted -> {
+            subscriptionIndex.add(subscription);
+            if (!inserted) return Mono.<Void>empty();
+            flightReminders.schedule(subscription);
+            return emailSenderService.sendConfirmationEmailAsync(
+                email,
+                subscription.getAirlineCode(),
+                subscription.getFlightNumber(),
+                subscription.getCityHe(),
+                subscription.getDirection()
+            );
         })
-        .flatMap(savedUser ->
-            emailSenderService
-                .sendConfirmationEmailAsync(
-                    email,
-                    subscription.getAirlineCode(),
-                    subscription.getFlightNumber(),
-                    subscription.getCityHe(),
-                    subscription.getDirection()
-                )
-                .thenReturn(savedUser)
-        );
+        .then(userInfo(email));
+    }
+
+    // Streams one result per user and flight as each chunk is written; confirmations go out at the end
+    @PostMapping(value = "/subscribe/bulk", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<SubscriptionResult> subscribeBulk(Principal principal, @RequestBody BulkSubscriptionRequest request) {
+        List<String> users = targetUsers(principal, request.users());
+        return bulkSubscriptionService.subscribe(users, request.flights() == null ? List.of() : request.flights());
+    }
+
+    @PostMapping(value = "/unsubscribe/bulk", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<SubscriptionResult> unsubscribeBulk(Principal principal, @RequestBody BulkUnsubscribeRequest request) {
+        List<String> users = targetUsers(principal, request.users());
+        return bulkSubscriptionService.unsubscribe(users, request.flights() == null ? List.of() : request.flights());
+    }
+
+    // Bundle flight updates into one digest email per window instead of one email per flight
+    @PostMapping("/email-digest")
+    public Mono<UserInfo> setEmailDigest(Principal principal, @RequestParam boolean enabled) {
+        String email = UserControllerUtils.extractEmail(principal);
+
+        return ensureUser(email, Update.update("emailDigest", enabled))
+        .then(userInfo(email));
     }
 
     @PostMapping("/unsubscribe")
@@ -67,15 +134,42 @@ public class UserController {
                                             @RequestParam String scheduledDate) {
         String email = UserControllerUtils.extractEmail(principal);
 
-        return userRepository.findById(email)
-        .flatMap(user -> {
-            user.getSubscriptions().removeIf(sub -> 
-                sub.getAirlineCode().equals(airlineCode) &&
-                sub.getFlightNumber().equals(flightNumber) &&
-                sub.getScheduledTime().contains(scheduledDate)
-            );
-            return userRepository.save(user);
-        })
+        return subscriptionRepository.findByUserIdAndAirlineCodeAndFlightNumber(email, airlineCode, flightNumber)
+        .filter(sub -> UserControllerUtils.matchesScheduledTime(sub.getScheduledTime(), scheduledDate))
+        .map(Subscription::getId)
+        .collectList()
+        .filter(ids -> !ids.isEmpty())
+        .flatMap(ids -> mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), Subscription.class)
+            .doOnNext(result -> ids.forEach(id -> {
+                subscriptionIndex.remove(id);
+                flightReminders.cancel(id);
+            })))
         .then();
     }
+
+    private List<String> targetUsers(Principal principal, List<String> requested) {
+        String email = UserControllerUtils.extractEmail(principal);
+        if (requested == null || requested.isEmpty()) return List.of(email);
+        if (!bulkAgents.contains(email) && !requested.stream().allMatch(email::equals)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not allowed to manage other users' subscriptions");
+        }
+        return requested.stream().filter(user -> user != null && !user.isBlank()).map(String::trim).distinct().toList();
+    }
+
+    // Creates the user on first sight and applies any other change in the same atomic upsert
+    private Mono<Void> ensureUser(String email, Update update) {
+        return mongoTemplate.upsert(Query.query(Criteria.where("_id").is(email)), update.setOnInsert("email", email), User.class)
+            .then();
+    }
+
+    private Mono<Boolean> insertIfAbsent(Subscription subscription) {
+        return mongoTemplate.insert(subscription)
+            .thenReturn(true)
+            .onErrorResume(DuplicateKeyException.class, error -> Mono.just(false));
+    }
+
+    private Mono<UserInfo> userInfo(String email) {
+        return userRepository.findById(email)
+            .zipWith(subscriptionRepository.findByUserId(email).collectList(), UserInfo::of);
+    }
 }
@@ -0,0 +1,6 @@
+package com.example.reactivewings.model;
+
+import java.util.List;
+
+// Flights to subscribe, and optionally the users to subscribe to them (defaults to the caller)
+public record BulkSubscriptionRequest(List<String> users, List<Flight> flights) {}
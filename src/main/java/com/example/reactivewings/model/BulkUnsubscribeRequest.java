@@ -0,0 +1,6 @@
+package com.example.reactivewings.model;
+
+import java.util.List;
+
+// Flight keys to unsubscribe from, and optionally the users to unsubscribe (defaults to the caller)
+public record BulkUnsubscribeRequest(List<String> users, List<FlightKey> flights) {}
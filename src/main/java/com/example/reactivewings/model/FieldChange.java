@@ -0,0 +1,4 @@
+package com.example.reactivewings.model;
+
+// One changed subscription field with its old and new values, already formatted for display
+public record FieldChange(String field, String from, String to) {}
@@ -6,6 +6,7 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @Document(collection = "flights")
 public class Flight
@@ -26,10 +27,10 @@ public class Flight
     private String airlineName;
 
     @JsonAlias("CHSTOL")
-    private String scheduledTime;
+    private LocalDateTime scheduledTime;
 
     @JsonAlias("CHPTOL")
-    private String estimatedTime;
+    private LocalDateTime estimatedTime;
 
     @JsonAlias("CHAORD")
     private String direction;
@@ -67,6 +68,13 @@ public class Flight
     @JsonAlias("CHRMINH")
     private String statusHe;
 
+    @JsonIgnore
+    private String contentHash;
+
+    // Fencing token of the ingest lease holder that last wrote the flight, 0 when written without a cluster
+    @JsonIgnore
+    private long fence;
+
     private LocalDateTime lastUpdated;
 
     // Constructors
@@ -88,11 +96,11 @@ public class Flight
     public String getAirlineName() { return airlineName; }
     public void setAirlineName(String airlineName) { this.airlineName = airlineName; }
 
-    public String getScheduledTime() { return scheduledTime; }
-    public void setScheduledTime(String scheduledTime) { this.scheduledTime = scheduledTime; }
+    public LocalDateTime getScheduledTime() { return scheduledTime; }
+    public void setScheduledTime(LocalDateTime scheduledTime) { this.scheduledTime = scheduledTime; }
 
-    public String getEstimatedTime() { return estimatedTime; }
-    public void setEstimatedTime(String estimatedTime) { this.estimatedTime = estimatedTime; }
+    public LocalDateTime getEstimatedTime() { return estimatedTime; }
+    public void setEstimatedTime(LocalDateTime estimatedTime) { this.estimatedTime = estimatedTime; }
 
     public String getDirection() { return direction; }
     public void setDirection(String direction) { this.direction = direction; }
@@ -130,6 +138,12 @@ public class Flight
     public String getStatusHe() { return statusHe; }
     public void setStatusHe(String statusHe) { this.statusHe = statusHe; }
 
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+
+    public long getFence() { return fence; }
+    public void setFence(long fence) { this.fence = fence; }
+
     public LocalDateTime getLastUpdated() { return lastUpdated; }
     public void setLastUpdated(LocalDateTime lastUpdated) { this.lastUpdated = lastUpdated; }
 }
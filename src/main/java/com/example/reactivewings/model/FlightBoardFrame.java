@@ -0,0 +1,25 @@
+package com.example.reactivewings.model;
+
+import java.util.List;
+import java.util.Map;
+
+// One message of the live board: a full snapshot, or the flights added, changed (only their changed fields) and removed
+public record FlightBoardFrame(Type type,
+                               long generation,
+                               List<Flight> flights,
+                               List<Map<String, Object>> changed,
+                               List<Long> removed) {
+    public enum Type { SNAPSHOT, DELTA }
+
+    public static FlightBoardFrame snapshot(long generation, List<Flight> flights) {
+        return new FlightBoardFrame(Type.SNAPSHOT, generation, flights, List.of(), List.of());
+    }
+
+    public static FlightBoardFrame delta(long generation, List<Flight> added, List<Map<String, Object>> changed, List<Long> removed) {
+        return new FlightBoardFrame(Type.DELTA, generation, added, changed, removed);
+    }
+
+    public boolean isEmpty() {
+        return flights.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+}
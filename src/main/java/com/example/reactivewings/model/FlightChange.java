@@ -0,0 +1,24 @@
+package com.example.reactivewings.model;
+
+import java.util.Set;
+
+// resumeToken is the change stream position of the change, null for in-process changes
+public record FlightChange(Type type, Flight flight, Set<String> changedFields, String resumeToken) {
+    public enum Type { ADDED, UPDATED, REMOVED }
+
+    public static FlightChange added(Flight flight) {
+        return new FlightChange(Type.ADDED, flight, Set.of(), null);
+    }
+
+    public static FlightChange updated(Flight flight, Set<String> changedFields) {
+        return new FlightChange(Type.UPDATED, flight, changedFields, null);
+    }
+
+    public static FlightChange removed(Flight flight) {
+        return new FlightChange(Type.REMOVED, flight, Set.of(), null);
+    }
+
+    public FlightChange withResumeToken(String resumeToken) {
+        return new FlightChange(type, flight, changedFields, resumeToken);
+    }
+}
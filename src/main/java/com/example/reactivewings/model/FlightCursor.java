@@ -0,0 +1,43 @@
+package com.example.reactivewings.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+// Position in the (lastUpdated, scheduledTime, flightId) descending order, handed to clients as an opaque token
+public record FlightCursor(LocalDateTime lastUpdated, LocalDateTime scheduledTime, Long flightId) {
+    private static final String SEPARATOR = "\u001f";
+
+    public static FlightCursor of(Flight flight) {
+        return new FlightCursor(flight.getLastUpdated(), flight.getScheduledTime(), flight.getFlightId());
+    }
+
+    public String encode() {
+        String raw = String.join(SEPARATOR,
+            lastUpdated != null ? lastUpdated.toString() : "",
+            scheduledTime != null ? scheduledTime.toString() : "",
+            flightId != null ? flightId.toString() : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static FlightCursor decode(String token) {
+        String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        String[] parts = raw.split(SEPARATOR, -1);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+
+        return new FlightCursor(
+            parts[0].isEmpty() ? null : LocalDateTime.parse(parts[0]),
+            parts[1].isEmpty() ? null : LocalDateTime.parse(parts[1]),
+            parts[2].isEmpty() ? null : Long.valueOf(parts[2]));
+    }
+
+    public Flight toProbe() {
+        Flight probe = new Flight();
+        probe.setLastUpdated(lastUpdated);
+        probe.setScheduledTime(scheduledTime);
+        probe.setFlightId(flightId);
+        return probe;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.reactivewings.model;
+
+import java.time.LocalDateTime;
+
+public record FlightKey(String airlineCode, String flightNumber, LocalDateTime scheduledTime) {
+    public static FlightKey of(Flight flight) {
+        return new FlightKey(flight.getAirlineCode(), flight.getFlightNumber(), flight.getScheduledTime());
+    }
+}
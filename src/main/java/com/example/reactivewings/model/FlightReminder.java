@@ -0,0 +1,13 @@
+package com.example.reactivewings.model;
+
+import java.time.LocalDateTime;
+
+// A reminder due for one subscription; departure is the time it was computed from
+public record FlightReminder(String subscriptionId, Kind kind, LocalDateTime departure) {
+    public enum Kind { CHECKIN_OPENS, DEPARTURE_SOON, GATE_CLOSING }
+
+    // Same reminder for the same departure time, whichever instance fires it
+    public String claimId() {
+        return subscriptionId + "|" + kind + "|" + departure;
+    }
+}
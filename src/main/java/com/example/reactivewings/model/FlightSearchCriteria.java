@@ -0,0 +1,31 @@
+package com.example.reactivewings.model;
+
+import java.time.LocalDate;
+
+public record FlightSearchCriteria(String airlineCode,
+                                   String flightNumber,
+                                   LocalDate scheduledDate,
+                                   LocalDate estimatedDate,
+                                   String direction,
+                                   String city,
+                                   String status) {
+    public static final FlightSearchCriteria ALL = new FlightSearchCriteria(null, null, null, null, null, null, null);
+
+    // Same normalisation the search endpoint has always applied before querying
+    public static FlightSearchCriteria of(String airlineCode,
+                                          String flightNumber,
+                                          LocalDate scheduledDate,
+                                          LocalDate estimatedDate,
+                                          String direction,
+                                          String city,
+                                          String status) {
+        return new FlightSearchCriteria(
+            airlineCode != null ? airlineCode.toUpperCase() : null,
+            flightNumber,
+            scheduledDate,
+            estimatedDate,
+            direction != null ? direction.toUpperCase() : null,
+            city != null ? city.toUpperCase() : null,
+            status != null ? status.toUpperCase() : null);
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.reactivewings.model;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// A flight update email owed to a subscriber; the id is subscriptionId:revision, so one change is recorded once
+@Document(collection = "notification_outbox")
+public class NotificationOutboxEntry {
+    public enum Status { PENDING, SENT, FAILED }
+
+    @Id
+    private String id;
+
+    private String userId;
+    private String email;
+    // Set from the user's preference when recorded: the entry waits for the user's digest instead of its flight's window
+    private boolean emailDigest;
+    private Long flightId;
+    // Pending entries with the same key wait in one coalescing window and are sent as one email
+    private String groupKey;
+    private String airlineCode;
+    private String flightNumber;
+    private List<FieldChange> changes;
+    private Status status;
+    private int attempts;
+    private LocalDateTime createdAt;
+    // Earliest time a drainer may claim the entry: the end of its coalescing window, then pushed forward by leases and retry backoff
+    private LocalDateTime availableAt;
+    private String leaseToken;
+    private String leaseOwner;
+    private LocalDateTime sentAt;
+    private String lastError;
+
+    public NotificationOutboxEntry() {}
+
+    public static NotificationOutboxEntry flightUpdate(User user, Subscription subscription, Flight flight, List<FieldChange> changes) {
+        NotificationOutboxEntry entry = new NotificationOutboxEntry();
+        entry.id = idempotencyKey(subscription);
+        entry.userId = user.getId();
+        entry.email = user.getEmail();
+        entry.emailDigest = user.isEmailDigest();
+        entry.flightId = flight.getFlightId();
+        entry.groupKey = groupKeyOf(entry.userId, entry.flightId, entry.emailDigest);
+        entry.airlineCode = flight.getAirlineCode();
+        entry.flightNumber = flight.getFlightNumber();
+        entry.changes = changes;
+        entry.status = Status.PENDING;
+        entry.createdAt = LocalDateTime.now();
+        entry.availableAt = entry.createdAt;
+        return entry;
+    }
+
+    /*
+     * Keyed on the revision the change will move the subscription to, not on the flight's content:
+     * a cycle repeated before the subscription was saved rebuilds the same key, while a flight that
+     * goes back to an earlier state is a new revision and a new entry.
+     */
+    public static String idempotencyKey(Subscription subscription) {
+        return subscription.getId() + ":" + (subscription.getRevision() + 1);
+    }
+
+    // A digest user's flights share one window; otherwise each flight of each user has its own
+    public static String groupKeyOf(String userId, Long flightId, boolean emailDigest) {
+        return emailDigest ? userId : userId + ":" + flightId;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getEmail() { return email; }
+    public void setEmail(String email) { this.email = email; }
+
+    public boolean isEmailDigest() { return emailDigest; }
+    public void setEmailDigest(boolean emailDigest) { this.emailDigest = emailDigest; }
+
+    public Long getFlightId() { return flightId; }
+    public void setFlightId(Long flightId) { this.flightId = flightId; }
+
+    public String getGroupKey() { return groupKey; }
+    public void setGroupKey(String groupKey) { this.groupKey = groupKey; }
+
+    public String getAirlineCode() { return airlineCode; }
+    public void setAirlineCode(String airlineCode) { this.airlineCode = airlineCode; }
+
+    public String getFlightNumber() { return flightNumber; }
+    public void setFlightNumber(String flightNumber) { this.flightNumber = flightNumber; }
+
+    public List<FieldChange> getChanges() { return changes; }
+    public void setChanges(List<FieldChange> changes) { this.changes = changes; }
+
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getAvailableAt() { return availableAt; }
+    public void setAvailableAt(LocalDateTime availableAt) { this.availableAt = availableAt; }
+
+    public String getLeaseToken() { return leaseToken; }
+    public void setLeaseToken(String leaseToken) { this.leaseToken = leaseToken; }
+
+    public String getLeaseOwner() { return leaseOwner; }
+    public void setLeaseOwner(String leaseOwner) { this.leaseOwner = leaseOwner; }
+
+    public LocalDateTime getSentAt() { return sentAt; }
+    public void setSentAt(LocalDateTime sentAt) { this.sentAt = sentAt; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+}
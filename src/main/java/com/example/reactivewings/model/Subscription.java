@@ -0,0 +1,163 @@
+package com.example.reactivewings.model;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * A user's subscription to one flight: the flight key, the fields used to describe it, and the
+ * state the user was last notified about. The id is derived from user and flight key, so
+ * subscribing twice is the same upsert and never creates a duplicate.
+ */
+@Document(collection = "subscriptions")
+public class Subscription {
+    // Same shape as the migration's $dateToString, so migrated and new ids agree
+    private static final DateTimeFormatter ID_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    @Id
+    private String id;
+
+    // Bookkeeping fields are kept out of the API responses that list subscriptions; the owner is the caller
+    @JsonIgnore
+    private String userId;
+
+    // Flight key
+    private String airlineCode;
+    private String flightNumber;
+    private LocalDateTime scheduledTime;
+
+    // Optional match filters and display fields, taken from the flight at subscribe time
+    private String airportCode;
+    private String airlineName;
+    private String direction;
+    private String cityHe;
+    private String cityEn;
+
+    // Last notified state
+    private LocalDateTime estimatedTime;
+    private int terminal;
+    private String counters;
+    private String checkinZone;
+    private String statusHe;
+    @JsonIgnore
+    private String contentHash;
+    private LocalDateTime lastUpdated;
+    // Counts the notified changes; the next change's outbox entry is keyed on revision + 1
+    @JsonIgnore
+    private long revision;
+
+    @JsonIgnore
+    private LocalDateTime createdAt;
+    // Set from the scheduled time; the archiver moves the subscription to history after it
+    @JsonIgnore
+    private LocalDateTime expiresAt;
+
+    public Subscription() {}
+
+    public static Subscription of(String userId, Flight flight) {
+        Subscription subscription = new Subscription();
+        subscription.id = idOf(userId, flight.getAirlineCode(), flight.getFlightNumber(), flight.getScheduledTime());
+        subscription.userId = userId;
+        subscription.airlineCode = flight.getAirlineCode();
+        subscription.flightNumber = flight.getFlightNumber();
+        subscription.scheduledTime = flight.getScheduledTime();
+        subscription.airportCode = flight.getAirportCode();
+        subscription.airlineName = flight.getAirlineName();
+        subscription.direction = flight.getDirection();
+        subscription.cityHe = flight.getCityHe();
+        subscription.cityEn = flight.getCityEn();
+        subscription.estimatedTime = flight.getEstimatedTime();
+        subscription.terminal = flight.getTerminal();
+        subscription.counters = flight.getCounters();
+        subscription.checkinZone = flight.getCheckinZone();
+        subscription.statusHe = flight.getStatusHe();
+        subscription.contentHash = flight.getContentHash();
+        subscription.lastUpdated = flight.getLastUpdated();
+        subscription.createdAt = LocalDateTime.now();
+        return subscription;
+    }
+
+    public static String idOf(String userId, String airlineCode, String flightNumber, LocalDateTime scheduledTime) {
+        return userId + "|" + nullToEmpty(airlineCode) + "|" + nullToEmpty(flightNumber) + "|"
+            + (scheduledTime == null ? "" : ID_TIME_FORMAT.format(scheduledTime));
+    }
+
+    // The user is everything before the last three separators, since the flight key parts never contain one
+    public static String userIdOf(String id) {
+        int end = id.length();
+        for (int i = 0; i < 3 && end > 0; i++) end = id.lastIndexOf('|', end - 1);
+        return end < 0 ? id : id.substring(0, end);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    public FlightKey key() {
+        return new FlightKey(airlineCode, flightNumber, scheduledTime);
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getAirlineCode() { return airlineCode; }
+    public void setAirlineCode(String airlineCode) { this.airlineCode = airlineCode; }
+
+    public String getFlightNumber() { return flightNumber; }
+    public void setFlightNumber(String flightNumber) { this.flightNumber = flightNumber; }
+
+    public LocalDateTime getScheduledTime() { return scheduledTime; }
+    public void setScheduledTime(LocalDateTime scheduledTime) { this.scheduledTime = scheduledTime; }
+
+    public String getAirportCode() { return airportCode; }
+    public void setAirportCode(String airportCode) { this.airportCode = airportCode; }
+
+    public String getAirlineName() { return airlineName; }
+    public void setAirlineName(String airlineName) { this.airlineName = airlineName; }
+
+    public String getDirection() { return direction; }
+    public void setDirection(String direction) { this.direction = direction; }
+
+    public String getCityHe() { return cityHe; }
+    public void setCityHe(String cityHe) { this.cityHe = cityHe; }
+
+    public String getCityEn() { return cityEn; }
+    public void setCityEn(String cityEn) { this.cityEn = cityEn; }
+
+    public LocalDateTime getEstimatedTime() { return estimatedTime; }
+    public void setEstimatedTime(LocalDateTime estimatedTime) { this.estimatedTime = estimatedTime; }
+
+    public int getTerminal() { return terminal; }
+    public void setTerminal(int terminal) { this.terminal = terminal; }
+
+    public String getCounters() { return counters; }
+    public void setCounters(String counters) { this.counters = counters; }
+
+    public String getCheckinZone() { return checkinZone; }
+    public void setCheckinZone(String checkinZone) { this.checkinZone = checkinZone; }
+
+    public String getStatusHe() { return statusHe; }
+    public void setStatusHe(String statusHe) { this.statusHe = statusHe; }
+
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+
+    public LocalDateTime getLastUpdated() { return lastUpdated; }
+    public void setLastUpdated(LocalDateTime lastUpdated) { this.lastUpdated = lastUpdated; }
+
+    public long getRevision() { return revision; }
+    public void setRevision(long revision) { this.revision = revision; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(LocalDateTime expiresAt) { this.expiresAt = expiresAt; }
+}
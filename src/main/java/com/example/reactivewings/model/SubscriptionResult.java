@@ -0,0 +1,16 @@
+package com.example.reactivewings.model;
+
+import java.time.LocalDateTime;
+
+// Outcome of one user and flight in a bulk subscribe or unsubscribe
+public record SubscriptionResult(String userId,
+                                 String airlineCode,
+                                 String flightNumber,
+                                 LocalDateTime scheduledTime,
+                                 Status status) {
+    public enum Status { CREATED, EXISTING, REMOVED, NOT_FOUND, INVALID }
+
+    public static SubscriptionResult of(String userId, FlightKey key, Status status) {
+        return new SubscriptionResult(userId, key.airlineCode(), key.flightNumber(), key.scheduledTime(), status);
+    }
+}
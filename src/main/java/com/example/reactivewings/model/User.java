@@ -1,8 +1,5 @@
 package com.example.reactivewings.model;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -12,7 +9,8 @@ public class User {
     private String id;
     
     private String email;
-    private List<Flight> subscriptions = new ArrayList<>();
+    // Bundle updates of all flights into one email per digest window
+    private boolean emailDigest;
 
     public User() {}
 
@@ -27,6 +25,6 @@ public class User {
     public String getEmail() { return email; }
     public void setEmail(String email) { this.email = email; }
 
-    public List<Flight> getSubscriptions() { return subscriptions; }
-    public void setSubscriptions(List<Flight> subscriptions) { this.subscriptions = subscriptions; }
+    public boolean isEmailDigest() { return emailDigest; }
+    public void setEmailDigest(boolean emailDigest) { this.emailDigest = emailDigest; }
 }
@@ -0,0 +1,10 @@
+package com.example.reactivewings.model;
+
+import java.util.List;
+
+// The user document joined with its subscriptions, as returned by the user endpoints
+public record UserInfo(String id, String email, boolean emailDigest, List<Subscription> subscriptions) {
+    public static UserInfo of(User user, List<Subscription> subscriptions) {
+        return new UserInfo(user.getId(), user.getEmail(), user.isEmailDigest(), subscriptions);
+    }
+}
@@ -1,7 +1,5 @@
 package com.example.reactivewings.repo;
 
-import java.time.LocalDateTime;
-
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 
 import com.example.reactivewings.model.Flight;
@@ -13,6 +11,4 @@ import reactor.core.publisher.Mono;
 public interface FlightRepository extends ReactiveMongoRepository<Flight, String> {
     Mono<Flight> findByFlightId(Integer flightId);
     Flux<Flight> findByDirection(String direction);
-
-    Mono<Long> deleteByLastUpdatedBefore(LocalDateTime cutoff);
 }
@@ -0,0 +1,13 @@
+package com.example.reactivewings.repo;
+
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+import com.example.reactivewings.model.Subscription;
+
+import reactor.core.publisher.Flux;
+
+
+public interface SubscriptionRepository extends ReactiveMongoRepository<Subscription, String> {
+    Flux<Subscription> findByUserId(String userId);
+    Flux<Subscription> findByUserIdAndAirlineCodeAndFlightNumber(String userId, String airlineCode, String flightNumber);
+}
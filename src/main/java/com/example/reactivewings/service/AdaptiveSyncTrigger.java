@@ -0,0 +1,80 @@
+package com.example.reactivewings.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+
+/**
+ * Sync trigger that polls at {@code minInterval} while a departure/arrival bank is underway,
+ * at {@code baseInterval} after a run that found changes, and backs off exponentially
+ * up to {@code maxInterval} while the feed stays quiet.
+ */
+public class AdaptiveSyncTrigger implements Trigger {
+    private final Duration minInterval;
+    private final Duration baseInterval;
+    private final Duration maxInterval;
+    private final Duration busyWindow;
+    private final int busyThreshold;
+
+    private volatile Duration currentInterval;
+    private volatile List<LocalDateTime> movements = List.of();
+
+    public AdaptiveSyncTrigger(Duration minInterval,
+                               Duration baseInterval,
+                               Duration maxInterval,
+                               Duration busyWindow,
+                               int busyThreshold) {
+        this.minInterval = minInterval;
+        this.baseInterval = baseInterval;
+        this.maxInterval = maxInterval;
+        this.busyWindow = busyWindow;
+        this.busyThreshold = busyThreshold;
+        this.currentInterval = baseInterval;
+    }
+
+    public void recordRun(boolean changed) {
+        if (changed) {
+            currentInterval = baseInterval;
+        } else {
+            Duration next = currentInterval.multipliedBy(2);
+            currentInterval = next.compareTo(maxInterval) > 0 ? maxInterval : next;
+        }
+    }
+
+    public void recordMovements(List<LocalDateTime> times) {
+        List<LocalDateTime> sorted = new ArrayList<>(times);
+        Collections.sort(sorted);
+        movements = sorted;
+    }
+
+    public int movementsAround(LocalDateTime now) {
+        List<LocalDateTime> snapshot = movements;
+        return lowerBound(snapshot, now.plus(busyWindow)) - lowerBound(snapshot, now.minus(busyWindow));
+    }
+
+    @Override
+    public Instant nextExecution(TriggerContext triggerContext) {
+        Instant last = triggerContext.lastActualExecution();
+        if (last == null) {
+            return triggerContext.getClock().instant();
+        }
+
+        LocalDateTime now = LocalDateTime.now(triggerContext.getClock().withZone(ZoneId.systemDefault()));
+        Duration interval = movementsAround(now) >= busyThreshold ? minInterval : currentInterval;
+        return last.plus(interval);
+    }
+
+    private static int lowerBound(List<LocalDateTime> sorted, LocalDateTime key) {
+        int index = Collections.binarySearch(sorted, key);
+        if (index < 0) return -index - 1;
+        while (index > 0 && sorted.get(index - 1).equals(key)) index--;
+        return index;
+    }
+}
@@ -1,29 +1,120 @@
 package com.example.reactivewings.service;
 
+import java.util.function.LongConsumer;
+
+import com.example.reactivewings.model.Flight;
+import com.example.reactivewings.utils.CkanRecordParser;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @Service
 public class BenGurionAPI {
+    private static final String SEARCH_PATH = "/api/3/action/datastore_search";
+    private static final String RESOURCE_SHOW_PATH = "/api/3/action/resource_show";
+    private static final String RESOURCE_ID = "e83f763b-b7d7-479e-b172-ae981ddc6de5";
+
     private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+
+    @Value("${ben-gurion.page-size:1000}")
+    private int pageSize;
+
+    @Value("${ben-gurion.prefetch-pages:2}")
+    private int prefetchPages;
 
-    public BenGurionAPI(WebClient.Builder webClientBuilder) {
+    public BenGurionAPI(WebClient.Builder webClientBuilder, ObjectMapper objectMapper) {
         this.webClient = webClientBuilder.baseUrl("https://data.gov.il").build();
+        this.objectMapper = objectMapper;
     }
 
-    public Flux<JsonNode> getBenGurionFlightRecords() {
-        try {
+    // The reported total is passed to onTotal before the first record, so callers can tell a complete fetch from a short one
+    public Flux<Flight> getBenGurionFlights(LongConsumer onTotal) {
+        return fetchTotal()
+            .doOnNext(onTotal::accept)
+            .flatMapMany(total -> {
+                int pages = (int) ((total + pageSize - 1) / pageSize);
+                return Flux.range(0, pages)
+                    .flatMapSequential(page -> fetchPage(page * pageSize), Math.max(prefetchPages, 1));
+            })
+            .onErrorMap(e -> new RuntimeException("Failed to fetch flights", e));
+    }
+
+    // Cheap probe of the resource metadata, sent with the validators of the previous version if any
+    public Mono<FeedVersion> getFeedVersion(FeedVersion previous) {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder.path(RESOURCE_SHOW_PATH)
+                    .queryParam("id", RESOURCE_ID)
+                    .build())
+                .headers(headers -> {
+                    if (previous == null) return;
+                    if (previous.etag() != null) headers.setIfNoneMatch(previous.etag());
+                    if (previous.lastModifiedHeader() != null) headers.set(HttpHeaders.IF_MODIFIED_SINCE, previous.lastModifiedHeader());
+                })
+                .exchangeToMono(response -> {
+                    if (response.statusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED) && previous != null) {
+                        return Mono.just(previous);
+                    }
+                    if (response.statusCode().isError()) {
+                        return response.<FeedVersion>createError();
+                    }
+
+                    HttpHeaders headers = response.headers().asHttpHeaders();
+                    String etag = headers.getETag();
+                    String lastModifiedHeader = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+
+                    return response.bodyToMono(JsonNode.class).map(body -> {
+                        JsonNode result = body.path("result");
+                        String lastModified = result.path("last_modified").asText(null);
+                        if (lastModified == null || lastModified.isBlank()) {
+                            lastModified = result.path("metadata_modified").asText(null);
+                        }
+                        return new FeedVersion(etag, lastModifiedHeader, lastModified);
+                    });
+                });
+    }
+
+    private Mono<Long> fetchTotal() {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder.path(SEARCH_PATH)
+                    .queryParam("resource_id", RESOURCE_ID)
+                    .queryParam("limit", 0)
+                    .build())
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .map(response -> response.path("result").path("total").asLong());
+    }
+
+    private Flux<Flight> fetchPage(int offset) {
+        return Flux.defer(() -> {
+            CkanRecordParser<Flight> parser = new CkanRecordParser<>(objectMapper, Flight.class);
+
             return webClient.get()
-                    .uri("/api/3/action/datastore_search?resource_id=e83f763b-b7d7-479e-b172-ae981ddc6de5")
+                    .uri(uriBuilder -> uriBuilder.path(SEARCH_PATH)
+                        .queryParam("resource_id", RESOURCE_ID)
+                        .queryParam("limit", pageSize)
+                        .queryParam("offset", offset)
+                        .queryParam("sort", "_id asc")
+                        .queryParam("include_total", false)
+                        .build())
                     .retrieve()
-                    .bodyToMono(JsonNode.class)
-                    .map(response -> response.path("result").path("records"))
-                    .flatMapMany(records -> Flux.fromIterable(records));
-        } catch (Exception e) {
-            return Flux.error(new RuntimeException("Failed to fetch flights", e));
-        }
+                    .bodyToFlux(DataBuffer.class)
+                    .concatMapIterable(buffer -> {
+                        byte[] bytes = new byte[buffer.readableByteCount()];
+                        buffer.read(bytes);
+                        DataBufferUtils.release(buffer);
+                        return parser.feed(bytes);
+                    })
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(parser.endOfInput())));
+        });
     }
 }
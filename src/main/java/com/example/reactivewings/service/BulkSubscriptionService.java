@@ -0,0 +1,198 @@
+package com.example.reactivewings.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.example.reactivewings.model.Flight;
+import com.example.reactivewings.model.FlightKey;
+import com.example.reactivewings.model.Subscription;
+import com.example.reactivewings.model.SubscriptionResult;
+import com.example.reactivewings.model.SubscriptionResult.Status;
+import com.example.reactivewings.model.User;
+import com.mongodb.bulk.BulkWriteUpsert;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Subscribes and unsubscribes many users and flights at once. Items are written in chunks of
+ * {@code subscriptions.bulk-batch-size}, each chunk one unordered bulk upsert (or one delete), and
+ * each item's result is emitted as soon as its chunk is written. Subscriptions are inserted with
+ * {@code $setOnInsert}, so existing ones are reported instead of overwritten, and every user gets
+ * a single confirmation listing all the flights that were new to them.
+ */
+@Service
+public class BulkSubscriptionService {
+    private static final Logger log = LoggerFactory.getLogger(BulkSubscriptionService.class);
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final EmailSenderService emailSenderService;
+    private final SubscriptionIndex subscriptionIndex;
+    private final SubscriptionArchiver subscriptionArchiver;
+    private final FlightReminderScheduler reminders;
+
+    @Value("${subscriptions.bulk-batch-size:500}")
+    private int batchSize;
+
+    @Value("${subscriptions.bulk-max-items:5000}")
+    private int maxItems;
+
+    public BulkSubscriptionService(ReactiveMongoTemplate mongoTemplate,
+                                   EmailSenderService emailSenderService,
+                                   SubscriptionIndex subscriptionIndex,
+                                   SubscriptionArchiver subscriptionArchiver,
+                                   FlightReminderScheduler reminders) {
+        this.mongoTemplate = mongoTemplate;
+        this.emailSenderService = emailSenderService;
+        this.subscriptionIndex = subscriptionIndex;
+        this.subscriptionArchiver = subscriptionArchiver;
+        this.reminders = reminders;
+    }
+
+    public Flux<SubscriptionResult> subscribe(List<String> users, List<Flight> flights) {
+        checkSize(users, flights);
+
+        List<SubscriptionResult> invalid = new ArrayList<>();
+        Map<String, Subscription> subscriptions = new LinkedHashMap<>();
+        for (String user : users) {
+            for (Flight flight : flights) {
+                FlightKey key = FlightKey.of(flight);
+                if (!isComplete(key)) {
+                    invalid.add(SubscriptionResult.of(user, key, Status.INVALID));
+                    continue;
+                }
+                Subscription subscription = Subscription.of(user, flight);
+                subscription.setExpiresAt(subscriptionArchiver.expiryOf(subscription));
+                subscriptions.putIfAbsent(subscription.getId(), subscription);
+            }
+        }
+
+        Map<String, List<Subscription>> created = new ConcurrentHashMap<>();
+        Flux<SubscriptionResult> written = ensureUsers(users)
+            .thenMany(Flux.fromIterable(subscriptions.values()))
+            .buffer(batchSize)
+            .concatMap(chunk -> insertIfAbsent(chunk, created));
+
+        return Flux.fromIterable(invalid)
+            .concatWith(written)
+            .concatWith(Mono.defer(() -> confirm(created)).then(Mono.empty()));
+    }
+
+    public Flux<SubscriptionResult> unsubscribe(List<String> users, List<FlightKey> flights) {
+        checkSize(users, flights);
+
+        Map<String, SubscriptionResult> byId = new LinkedHashMap<>();
+        for (String user : users) {
+            for (FlightKey key : flights) {
+                byId.putIfAbsent(Subscription.idOf(user, key.airlineCode(), key.flightNumber(), key.scheduledTime()),
+                    SubscriptionResult.of(user, key, Status.REMOVED));
+            }
+        }
+
+        return Flux.fromIterable(byId.entrySet())
+            .buffer(batchSize)
+            .concatMap(chunk -> remove(chunk.stream().map(Map.Entry::getKey).toList())
+                .flatMapIterable(removed -> chunk.stream()
+                    .map(entry -> removed.contains(entry.getKey())
+                        ? entry.getValue()
+                        : withStatus(entry.getValue(), Status.NOT_FOUND))
+                    .toList()));
+    }
+
+    private void checkSize(List<String> users, List<?> flights) {
+        if ((long) users.size() * flights.size() > maxItems) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "At most " + maxItems + " user and flight pairs per request");
+        }
+    }
+
+    private static boolean isComplete(FlightKey key) {
+        return key.airlineCode() != null && key.flightNumber() != null && key.scheduledTime() != null;
+    }
+
+    private Mono<Void> ensureUsers(List<String> users) {
+        if (users.isEmpty()) return Mono.empty();
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        users.forEach(user -> bulk.upsert(Query.query(Criteria.where("_id").is(user)), new Update().setOnInsert("email", user)));
+        return bulk.execute().then();
+    }
+
+    // Upserted indexes in the bulk result are the subscriptions that did not exist yet
+    private Flux<SubscriptionResult> insertIfAbsent(List<Subscription> chunk, Map<String, List<Subscription>> created) {
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Subscription.class);
+        chunk.forEach(subscription -> {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(subscription, document);
+            bulk.upsert(Query.query(Criteria.where("_id").is(subscription.getId())), Update.fromDocument(new Document("$setOnInsert", document)));
+        });
+
+        return bulk.execute().flatMapIterable(result -> {
+            Set<Integer> inserted = new HashSet<>();
+            result.getUpserts().stream().map(BulkWriteUpsert::getIndex).forEach(inserted::add);
+
+            List<SubscriptionResult> results = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                Subscription subscription = chunk.get(i);
+                subscriptionIndex.add(subscription);
+                if (inserted.contains(i)) {
+                    reminders.schedule(subscription);
+                    created.computeIfAbsent(subscription.getUserId(), user -> new ArrayList<>()).add(subscription);
+                }
+                results.add(SubscriptionResult.of(subscription.getUserId(), subscription.key(),
+                    inserted.contains(i) ? Status.CREATED : Status.EXISTING));
+            }
+            return results;
+        });
+    }
+
+    // Reads the ids that exist first, so each item can be reported as removed or not found
+    private Mono<Set<String>> remove(List<String> ids) {
+        Query query = Query.query(Criteria.where("_id").in(ids));
+        query.fields().include("_id");
+
+        return mongoTemplate.find(query, Subscription.class)
+            .map(Subscription::getId)
+            .collect(ConcurrentHashMap::<String>newKeySet, Set::add)
+            .flatMap(existing -> existing.isEmpty()
+                ? Mono.just(existing)
+                : mongoTemplate.remove(Query.query(Criteria.where("_id").in(existing)), Subscription.class)
+                    .doOnNext(result -> existing.forEach(id -> {
+                        subscriptionIndex.remove(id);
+                        reminders.cancel(id);
+                    }))
+                    .thenReturn(existing));
+    }
+
+    private Mono<Void> confirm(Map<String, List<Subscription>> created) {
+        return Flux.fromIterable(created.entrySet())
+            .concatMap(entry -> emailSenderService.sendSubscriptionsConfirmationEmailAsync(entry.getKey(), entry.getValue())
+                .onErrorResume(error -> {
+                    log.warn("Could not send confirmation to {}: {}", entry.getKey(), error.getMessage());
+                    return Mono.empty();
+                }))
+            .then();
+    }
+
+    private static SubscriptionResult withStatus(SubscriptionResult result, Status status) {
+        return new SubscriptionResult(result.userId(), result.airlineCode(), result.flightNumber(), result.scheduledTime(), status);
+    }
+}
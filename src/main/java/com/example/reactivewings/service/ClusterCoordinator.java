@@ -0,0 +1,259 @@
+package com.example.reactivewings.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.example.reactivewings.utils.ConsistentHashRing;
+
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Coordinates the instances through two small collections. Every node heartbeats into
+ * {@code cluster_nodes}; the nodes seen within {@code cluster.node-timeout-ms} form a
+ * {@link ConsistentHashRing} that partitions users between them, and a changed ring is published
+ * so work can be rebalanced. Singleton jobs take a lease in {@code cluster_leases}: whoever
+ * acquires an expired lease bumps its fencing token and the holder renews it with every heartbeat.
+ * Writes stamp their token on the documents they write and filter with {@link #fenced}, so a
+ * node that lost its lease cannot overwrite what a newer holder wrote; {@link #checkFence} lets it
+ * notice and stop early.
+ */
+@Service
+public class ClusterCoordinator {
+    private static final Logger log = LoggerFactory.getLogger(ClusterCoordinator.class);
+
+    private static final String NODES = "cluster_nodes";
+    private static final String LEASES = "cluster_leases";
+
+    // The token of a disabled cluster: real tokens start at 1, so it is older than every stamp and fences nothing
+    public static final long UNFENCED = 0L;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final String nodeId;
+    private final Map<String, Long> heldLeases = new ConcurrentHashMap<>();
+    private final Sinks.Many<ConsistentHashRing> rebalances = Sinks.many().multicast().directBestEffort();
+    private final Sinks.Empty<Void> joined = Sinks.empty();
+    private volatile ConsistentHashRing ring = ConsistentHashRing.EMPTY;
+    private volatile boolean partitioned;
+
+    // false runs every job on this node, as a single instance would
+    @Value("${cluster.enabled:true}")
+    private boolean enabled;
+
+    @Value("${cluster.heartbeat-ms:5000}")
+    private long heartbeatMs;
+
+    @Value("${cluster.node-timeout-ms:15000}")
+    private long nodeTimeoutMs;
+
+    // Must outlast a sync batch, or the holder is fenced off mid-sync
+    @Value("${cluster.lease-ms:30000}")
+    private long leaseMs;
+
+    @Value("${cluster.virtual-nodes:64}")
+    private int virtualNodes;
+
+    // A stable cluster.node-id lets a restarted node resume its own checkpoints; by default every start is a new node
+    public ClusterCoordinator(ReactiveMongoTemplate mongoTemplate, @Value("${cluster.node-id:}") String nodeId) {
+        this.mongoTemplate = mongoTemplate;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            joined.tryEmitEmpty();
+            return;
+        }
+
+        log.info("Joining the cluster as node {}", nodeId);
+        ensureNodeIndex()
+            .thenMany(Flux.interval(Duration.ZERO, Duration.ofMillis(heartbeatMs)))
+            .onBackpressureDrop()
+            .concatMap(tick -> heartbeat()
+                .then(refreshMembers())
+                .then(renewLeases())
+                .onErrorResume(error -> {
+                    log.warn("Cluster heartbeat failed: {}", error.getMessage());
+                    return Mono.empty();
+                }), 1)
+            .subscribe();
+    }
+
+    /*
+     * Leaving explicitly lets the others take over at their next heartbeat instead of after the
+     * timeout. Leases are released by expiring them, never deleted, so the next holder's token still
+     * exceeds every token stamped before.
+     */
+    @PreDestroy
+    public void stop() {
+        if (!enabled) return;
+        try {
+            Update release = new Update().set("expiresAt", LocalDateTime.now()).unset("owner");
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(nodeId)), NODES)
+                .then(mongoTemplate.updateMulti(Query.query(Criteria.where("owner").is(nodeId)), release, LEASES))
+                .doOnSuccess(released -> heldLeases.clear())
+                .block(Duration.ofSeconds(5));
+        } catch (RuntimeException e) {
+            log.warn("Could not leave the cluster cleanly: {}", e.getMessage());
+        }
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    // Completes once this node has seen the members at least once
+    public Mono<Void> whenJoined() {
+        return joined.asMono();
+    }
+
+    // Emits the new ring whenever nodes join or leave
+    public Flux<ConsistentHashRing> rebalances() {
+        return rebalances.asFlux();
+    }
+
+    // Called once every node receives every change, so each keeps only its share of the users
+    public void partitionByUser() {
+        if (enabled) partitioned = true;
+    }
+
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+
+    public boolean owns(String key) {
+        if (!partitioned) return true;
+        ConsistentHashRing current = ring;
+        return current.isEmpty() || nodeId.equals(current.ownerOf(key));
+    }
+
+    /*
+     * Emits the fencing token when this node holds the lease, renewing it, or takes it over because
+     * it expired or never existed; empty when another node holds it. Taking over increments the
+     * token, so every holder's token is greater than all before it.
+     */
+    public Mono<Long> acquire(String lease) {
+        if (!enabled) return Mono.just(UNFENCED);
+
+        Long held = heldLeases.get(lease);
+        if (held != null) {
+            return renew(lease, held).filter(renewed -> renewed).map(renewed -> held);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Query expired = Query.query(Criteria.where("_id").is(lease).and("expiresAt").lt(now));
+        Update take = new Update()
+            .set("owner", nodeId)
+            .set("expiresAt", now.plus(Duration.ofMillis(leaseMs)))
+            .inc("token", 1);
+
+        return mongoTemplate.findAndModify(expired, take, FindAndModifyOptions.options().upsert(true).returnNew(true), Document.class, LEASES)
+            .map(document -> ((Number) document.get("token")).longValue())
+            .doOnNext(token -> {
+                heldLeases.put(lease, token);
+                log.info("Acquired lease {} with token {}", lease, token);
+            })
+            // The upsert collides with the live lease of another node
+            .onErrorResume(DuplicateKeyException.class, error -> Mono.empty());
+    }
+
+    // Fails with LeaseLostException unless this node still holds the lease with this token
+    public Mono<Void> checkFence(String lease, long token) {
+        if (!enabled) return Mono.empty();
+
+        Query current = Query.query(Criteria.where("_id").is(lease)
+            .and("owner").is(nodeId)
+            .and("token").is(token)
+            .and("expiresAt").gt(LocalDateTime.now()));
+        return mongoTemplate.exists(current, LEASES)
+            .flatMap(valid -> {
+                if (valid) return Mono.<Void>empty();
+                heldLeases.remove(lease, token);
+                return Mono.error(new LeaseLostException(lease, token));
+            });
+    }
+
+    /*
+     * Narrows a write to the documents a holder of this token may change: those stamped with an
+     * older or the same token, or never stamped. Unfenced writes may change every document.
+     */
+    public static Query fenced(Criteria criteria, long token) {
+        Query query = Query.query(criteria);
+        return token == UNFENCED ? query : query.addCriteria(Criteria.where("fence").not().gt(token));
+    }
+
+    private Mono<Boolean> renew(String lease, long token) {
+        Query held = Query.query(Criteria.where("_id").is(lease).and("owner").is(nodeId).and("token").is(token));
+        return mongoTemplate.updateFirst(held, Update.update("expiresAt", LocalDateTime.now().plus(Duration.ofMillis(leaseMs))), LEASES)
+            .map(result -> result.getMatchedCount() > 0)
+            .doOnNext(renewed -> {
+                if (!renewed && heldLeases.remove(lease, token)) log.warn("Lost lease {} with token {}", lease, token);
+            });
+    }
+
+    private Mono<Void> renewLeases() {
+        return Flux.fromIterable(heldLeases.entrySet())
+            .concatMap(held -> renew(held.getKey(), held.getValue()))
+            .then();
+    }
+
+    private Mono<Void> heartbeat() {
+        Update update = Update.update("heartbeatAt", LocalDateTime.now()).setOnInsert("startedAt", LocalDateTime.now());
+        return mongoTemplate.upsert(Query.query(Criteria.where("_id").is(nodeId)), update, NODES).then();
+    }
+
+    private Mono<Void> refreshMembers() {
+        Query live = Query.query(Criteria.where("heartbeatAt").gte(LocalDateTime.now().minus(Duration.ofMillis(nodeTimeoutMs))));
+        live.fields().include("_id");
+
+        return mongoTemplate.find(live, Document.class, NODES)
+            .map(node -> node.getString("_id"))
+            .collectList()
+            .doOnNext(this::updateMembers)
+            .then();
+    }
+
+    void updateMembers(List<String> nodes) {
+        ConsistentHashRing previous = ring;
+        ConsistentHashRing next = new ConsistentHashRing(nodes, virtualNodes);
+        if (!next.nodes().equals(previous.nodes())) {
+            ring = next;
+            log.info("Cluster members changed: {} nodes", next.nodes().size());
+            if (!previous.isEmpty()) rebalances.tryEmitNext(next);
+        }
+        joined.tryEmitEmpty();
+    }
+
+    // Nodes that died without leaving are cleaned up long after they stopped counting as members
+    private Mono<String> ensureNodeIndex() {
+        return mongoTemplate.indexOps(NODES)
+            .ensureIndex(new Index().on("heartbeatAt", Sort.Direction.ASC).expire(Duration.ofHours(1)))
+            .onErrorResume(error -> {
+                log.warn("Could not create cluster node TTL index: {}", error.getMessage());
+                return Mono.empty();
+            });
+    }
+}
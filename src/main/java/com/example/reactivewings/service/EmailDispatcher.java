@@ -0,0 +1,196 @@
+package com.example.reactivewings.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+
+import com.sendgrid.helpers.mail.Mail;
+import com.sendgrid.helpers.mail.objects.Content;
+import com.sendgrid.helpers.mail.objects.Email;
+import com.sendgrid.helpers.mail.objects.Personalization;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+/**
+ * Outgoing email pipeline. Messages wait in a bounded queue, are collected for a short window and
+ * grouped by identical subject and body, so all recipients of one flight change go out as a single
+ * SendGrid request with one personalization each. Requests are paced by a token bucket, capped in
+ * flight, and retried with jittered backoff on 429s, 5xxs and I/O errors. Callers that need to
+ * know the outcome use {@link #submit}, which completes once SendGrid accepted the request.
+ */
+@Service
+public class EmailDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(EmailDispatcher.class);
+
+    private static final String FROM = "flightsapispringboot@gmail.com";
+    // SendGrid rejects requests with more than 1000 personalizations
+    private static final int MAX_PERSONALIZATIONS = 1000;
+
+    private final MailTransport transport;
+    private final Sinks.Many<Pending> queue;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final TokenBucket rateLimit;
+    private final Counter enqueuedMessages;
+    private final Counter rejectedMessages;
+    private final Counter sentMessages;
+    private final Counter failedMessages;
+    private final Counter requests;
+
+    @Value("${email.batch-size:500}")
+    private int batchSize;
+
+    @Value("${email.batch-window-ms:1000}")
+    private long batchWindowMs;
+
+    @Value("${email.max-in-flight:4}")
+    private int maxInFlight;
+
+    @Value("${email.max-retries:4}")
+    private int maxRetries;
+
+    @Value("${email.retry-backoff-ms:500}")
+    private long retryBackoffMs;
+
+    public EmailDispatcher(MailTransport transport,
+                           MeterRegistry meterRegistry,
+                           @Value("${email.queue-capacity:10000}") int queueCapacity,
+                           @Value("${email.requests-per-second:5}") double requestsPerSecond,
+                           @Value("${email.burst:10}") int burst) {
+        this.transport = transport;
+        Queue<Pending> buffer = new ArrayBlockingQueue<>(queueCapacity);
+        this.queue = Sinks.many().unicast().onBackpressureBuffer(buffer);
+        this.rateLimit = new TokenBucket(requestsPerSecond, burst);
+
+        Gauge.builder("email.queue.depth", queued, AtomicInteger::get)
+            .description("Emails waiting to be sent")
+            .register(meterRegistry);
+        this.enqueuedMessages = meterRegistry.counter("email.messages", "outcome", "enqueued");
+        this.rejectedMessages = meterRegistry.counter("email.messages", "outcome", "rejected");
+        this.sentMessages = meterRegistry.counter("email.messages", "outcome", "sent");
+        this.failedMessages = meterRegistry.counter("email.messages", "outcome", "failed");
+        this.requests = meterRegistry.counter("email.requests");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        queue.asFlux()
+            .doOnNext(message -> queued.decrementAndGet())
+            .bufferTimeout(batchSize, Duration.ofMillis(batchWindowMs), true)
+            .concatMapIterable(EmailDispatcher::groupByContent)
+            .flatMap(this::send, maxInFlight)
+            .subscribe(null, error -> log.error("Email dispatcher stopped: {}", error.getMessage()));
+    }
+
+    // Never blocks the caller: a full queue drops the message and counts it
+    public boolean enqueue(EmailMessage message) {
+        return offer(new Pending(message, Sinks.empty()));
+    }
+
+    // Completes when the message was delivered, fails when the queue is full or delivery gave up
+    public Mono<Void> submit(EmailMessage message) {
+        return Mono.defer(() -> {
+            Pending pending = new Pending(message, Sinks.empty());
+            return offer(pending)
+                ? pending.outcome().asMono()
+                : Mono.error(new IllegalStateException("Email queue is full"));
+        });
+    }
+
+    private synchronized boolean offer(Pending pending) {
+        EmailMessage message = pending.message();
+        Sinks.EmitResult result = queue.tryEmitNext(pending);
+        if (result.isFailure()) {
+            rejectedMessages.increment();
+            log.warn("Email queue full, dropped \"{}\" to {}: {}", message.subject(), message.to(), result);
+            return false;
+        }
+        queued.incrementAndGet();
+        enqueuedMessages.increment();
+        return true;
+    }
+
+    public int queueDepth() {
+        return queued.get();
+    }
+
+    private static List<List<Pending>> groupByContent(List<Pending> batch) {
+        Map<EmailMessage.ContentKey, List<Pending>> groups = new LinkedHashMap<>();
+        batch.forEach(pending -> groups.computeIfAbsent(pending.message().contentKey(), key -> new ArrayList<>()).add(pending));
+
+        List<List<Pending>> requests = new ArrayList<>();
+        groups.values().forEach(group -> {
+            for (int from = 0; from < group.size(); from += MAX_PERSONALIZATIONS) {
+                requests.add(group.subList(from, Math.min(from + MAX_PERSONALIZATIONS, group.size())));
+            }
+        });
+        return requests;
+    }
+
+    private Mono<Void> send(List<Pending> recipients) {
+        Mail mail = toMail(recipients);
+
+        return Mono.defer(() -> Mono.delay(rateLimit.reserve())
+                .then(transport.send(mail))
+                .doOnSubscribe(subscription -> requests.increment()))
+            .retryWhen(Retry.backoff(maxRetries, Duration.ofMillis(retryBackoffMs))
+                .jitter(0.5)
+                .filter(EmailDispatcher::isTransient)
+                .doBeforeRetry(signal -> log.debug("Retrying email to {} recipients (attempt {}): {}",
+                    recipients.size(), signal.totalRetries() + 1, signal.failure().getMessage())))
+            .doOnSuccess(status -> {
+                sentMessages.increment(recipients.size());
+                log.debug("Sent \"{}\" to {} recipients ({})", mail.getSubject(), recipients.size(), status);
+                recipients.forEach(pending -> pending.outcome().tryEmitEmpty());
+            })
+            .onErrorResume(error -> {
+                failedMessages.increment(recipients.size());
+                log.error("Failed to send \"{}\" to {} recipients: {}", mail.getSubject(), recipients.size(), error.getMessage());
+                recipients.forEach(pending -> pending.outcome().tryEmitError(error));
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    private static Mail toMail(List<Pending> recipients) {
+        EmailMessage first = recipients.get(0).message();
+        Mail mail = new Mail();
+        mail.setFrom(new Email(FROM));
+        mail.setSubject(first.subject());
+        mail.addContent(new Content("text/html", first.html()));
+        recipients.forEach(pending -> {
+            Personalization personalization = new Personalization();
+            personalization.addTo(new Email(pending.message().to()));
+            mail.addPersonalization(personalization);
+        });
+        return mail;
+    }
+
+    private static boolean isTransient(Throwable error) {
+        if (error instanceof MailDeliveryException delivery) {
+            return delivery.isTransient();
+        }
+        return error instanceof IOException || error instanceof WebClientRequestException;
+    }
+
+    private record Pending(EmailMessage message, Sinks.Empty<Void> outcome) {}
+}
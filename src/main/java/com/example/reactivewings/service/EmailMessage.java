@@ -0,0 +1,10 @@
+package com.example.reactivewings.service;
+
+// One recipient's email; messages with the same subject and body can share a SendGrid request
+public record EmailMessage(String to, String subject, String html) {
+    public ContentKey contentKey() {
+        return new ContentKey(subject, html);
+    }
+
+    public record ContentKey(String subject, String html) {}
+}
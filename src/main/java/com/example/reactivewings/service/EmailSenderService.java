@@ -1,70 +1,57 @@
 package com.example.reactivewings.service;
 
-import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.example.reactivewings.model.FieldChange;
+import com.example.reactivewings.model.FlightReminder;
+import com.example.reactivewings.model.Subscription;
 import com.example.reactivewings.utils.EmailTemplates;
-import com.sendgrid.Method;
-import com.sendgrid.Request;
-import com.sendgrid.Response;
-import com.sendgrid.SendGrid;
-import com.sendgrid.helpers.mail.Mail;
-import com.sendgrid.helpers.mail.objects.Content;
-import com.sendgrid.helpers.mail.objects.Email;
 
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
+// Renders the emails; delivery, batching and retries are up to EmailDispatcher
 @Service
 public class EmailSenderService {
-    private final SendGrid sendGrid;
+    private final EmailDispatcher dispatcher;
+    // Subscribers of one flight change get the same merged changes, so they share one rendered body
+    private final Map<FlightUpdate, EmailMessage.ContentKey> renderedUpdates;
 
-    public EmailSenderService() {
-        this.sendGrid = new SendGrid(System.getenv("SENDGRID_API_KEY"));
-    }
-
-    private void sendEmail(String toEmail,
-                            String subject,
-                            String body,
-                            boolean html) throws IOException {
-        Email from = new Email("flightsapispringboot@gmail.com");
-        Email to = new Email(toEmail);
-        Content content = new Content("text/html", body);
-
-        Mail mail = new Mail(from, subject, to, content);
-
-        Request request = new Request();
-        request.setMethod(Method.POST);
-        request.setEndpoint("mail/send");
-
-        request.setBody(mail.build());
-
-        try {
-            Response response = this.sendGrid.api(request);
-            System.out.println(response.getStatusCode());
-            System.out.println(response.getBody());
-            System.out.println(response.getHeaders());
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        }
+    public EmailSenderService(EmailDispatcher dispatcher,
+                              @Value("${email.rendered-cache-size:1024}") int renderedCacheSize) {
+        this.dispatcher = dispatcher;
+        this.renderedUpdates = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FlightUpdate, EmailMessage.ContentKey> eldest) {
+                return size() > renderedCacheSize;
+            }
+        });
     }
 
+    // Completes once the update was delivered, so the outbox can mark it sent
     public Mono<Void> sendFlightUpdateEmailAsync(String toEmail,
                                                 String airlineCode,
                                                 String flightNumber,
-                                                String changes) {
-        return Mono.fromRunnable(() -> {
-            try {
+                                                List<FieldChange> changes) {
+        return Mono.defer(() -> {
+            EmailMessage.ContentKey rendered = renderedUpdates.computeIfAbsent(new FlightUpdate(airlineCode, flightNumber, changes), update -> {
                 String subject = "עדכון טיסה " + airlineCode + " " + flightNumber + " - reactivewings";
-                String flightHtmlContent = EmailTemplates.flightUpdateHtml(airlineCode, flightNumber, changes);
-                sendEmail(toEmail, subject, EmailTemplates.genericHtml(subject, flightHtmlContent), true);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        })
-        .subscribeOn(Schedulers.boundedElastic())
-        .then();
+                return new EmailMessage.ContentKey(subject, EmailTemplates.flightUpdateHtml(airlineCode, flightNumber, changes));
+            });
+            return dispatcher.submit(new EmailMessage(toEmail, rendered.subject(), rendered.html()));
+        });
+    }
+
+    public Mono<Void> sendFlightDigestEmailAsync(String toEmail, Map<String, List<FieldChange>> changesByFlight) {
+        return Mono.defer(() -> {
+            String subject = "סיכום עדכוני טיסות (" + changesByFlight.size() + ") - reactivewings";
+            return dispatcher.submit(new EmailMessage(toEmail, subject, EmailTemplates.flightDigestHtml(changesByFlight)));
+        });
     }
 
     public Mono<Void> sendConfirmationEmailAsync(String toEmail,
@@ -73,23 +60,46 @@ public class EmailSenderService {
                                                 String cityHe,
                                                 String direction) {
         return Mono.fromRunnable(() -> {
-            try {
-                String directionStr = direction.equals("D") ? "ל" : "מ";
-                String subject = new StringBuilder()
-                    .append("אישור הרשמה לטיסת ")
-                    .append(airlineCode).append(" ")
-                    .append(flightNumber).append(" ")
-                    .append(directionStr)
-                    .append(cityHe)
-                    .append(" ✈️")
-                    .toString();
-                String htmlContent = EmailTemplates.subscriptionConfirmationHtml(airlineCode, flightNumber, directionStr, cityHe);
-                sendEmail(toEmail, subject, htmlContent, true);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        })
-        .subscribeOn(Schedulers.boundedElastic())
-        .then();
+            String directionStr = "D".equals(direction) ? "ל" : "מ";
+            String subject = new StringBuilder()
+                .append("אישור הרשמה לטיסת ")
+                .append(airlineCode).append(" ")
+                .append(flightNumber).append(" ")
+                .append(directionStr)
+                .append(cityHe)
+                .append(" ✈️")
+                .toString();
+            String htmlContent = EmailTemplates.subscriptionConfirmationHtml(airlineCode, flightNumber, directionStr, cityHe);
+            dispatcher.enqueue(new EmailMessage(toEmail, subject, htmlContent));
+        });
+    }
+
+    // One email for all the flights a bulk subscribe added for this user
+    public Mono<Void> sendSubscriptionsConfirmationEmailAsync(String toEmail, List<Subscription> subscriptions) {
+        if (subscriptions.size() == 1) {
+            Subscription subscription = subscriptions.get(0);
+            return sendConfirmationEmailAsync(toEmail, subscription.getAirlineCode(), subscription.getFlightNumber(),
+                subscription.getCityHe(), subscription.getDirection());
+        }
+        return Mono.fromRunnable(() -> {
+            String subject = "אישור הרשמה ל-" + subscriptions.size() + " טיסות ✈️";
+            dispatcher.enqueue(new EmailMessage(toEmail, subject, EmailTemplates.subscriptionsConfirmationHtml(subscriptions)));
+        });
     }
+
+    // Each due reminder goes out as its own email and completes once delivered; the dispatcher batches them into SendGrid requests
+    public Mono<Void> sendFlightReminderAsync(FlightReminder reminder, Subscription subscription) {
+        return Mono.defer(() -> {
+            String subject = EmailTemplates.reminderTitle(reminder.kind()) + " - " + subscription.getAirlineCode()
+                + " " + subscription.getFlightNumber() + " ✈️";
+            return dispatcher.submit(new EmailMessage(subscription.getUserId(), subject, EmailTemplates.flightReminderHtml(
+                reminder.kind(),
+                subscription.getAirlineCode(),
+                subscription.getFlightNumber(),
+                subscription.getCityHe(),
+                reminder.departure())));
+        });
+    }
+
+    private record FlightUpdate(String airlineCode, String flightNumber, List<FieldChange> changes) {}
 }
@@ -0,0 +1,10 @@
+package com.example.reactivewings.service;
+
+// Change validators for the upstream resource: HTTP ETag/Last-Modified plus CKAN's own last_modified
+public record FeedVersion(String etag, String lastModifiedHeader, String lastModified) {
+    public boolean matches(FeedVersion other) {
+        if (other == null) return false;
+        if (etag != null && etag.equals(other.etag)) return true;
+        return lastModified != null && lastModified.equals(other.lastModified);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.reactivewings.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.example.reactivewings.model.Flight;
+import com.example.reactivewings.model.FlightCursor;
+import com.example.reactivewings.model.FlightSearchCriteria;
+import com.example.reactivewings.utils.FlightSyncUtils;
+
+/**
+ * Immutable, fully indexed copy of the board. Flights are kept in the order the API returns them
+ * (lastUpdated, scheduledTime, flightId, all descending) and every index maps a key to the ascending
+ * positions of its flights, so intersecting indexes preserves that order without sorting.
+ */
+public final class FlightBoard {
+    public static final Comparator<Flight> ORDER = Comparator
+        .comparing(Flight::getLastUpdated, Comparator.nullsLast(Comparator.reverseOrder()))
+        .thenComparing(Flight::getScheduledTime, Comparator.nullsLast(Comparator.reverseOrder()))
+        .thenComparing(Flight::getFlightId, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    private final long generation;
+    private final String digest;
+    private final Instant modifiedAt = Instant.now();
+    private final List<Flight> flights;
+    private final Map<String, int[]> byAirlineCode;
+    private final Map<String, int[]> byFlightNumber;
+    private final Map<String, int[]> byDirection;
+    private final Map<String, int[]> byCity;
+    private final Map<String, int[]> byStatus;
+    private final Map<LocalDate, int[]> byScheduledDate;
+    private final Map<LocalDate, int[]> byEstimatedDate;
+
+    public FlightBoard(List<Flight> flights) {
+        this(flights, 0);
+    }
+
+    public FlightBoard(List<Flight> flights, long generation) {
+        this.generation = generation;
+        List<Flight> sorted = new ArrayList<>(flights);
+        sorted.sort(ORDER);
+        this.flights = List.copyOf(sorted);
+        this.digest = FlightSyncUtils.boardDigest(this.flights);
+        this.byAirlineCode = index(this.flights, Flight::getAirlineCode);
+        this.byFlightNumber = index(this.flights, Flight::getFlightNumber);
+        this.byDirection = index(this.flights, Flight::getDirection);
+        this.byCity = index(this.flights, Flight::getCityName);
+        this.byStatus = index(this.flights, Flight::getStatusEn);
+        this.byScheduledDate = index(this.flights, flight -> datePart(flight.getScheduledTime()));
+        this.byEstimatedDate = index(this.flights, flight -> datePart(flight.getEstimatedTime()));
+    }
+
+    public int size() {
+        return flights.size();
+    }
+
+    // Increases with every rebuild, so readers can tell which snapshot a result came from
+    public long generation() {
+        return generation;
+    }
+
+    // Hash of every flight's identity, content and lastUpdated in board order; equal digests serialise identically
+    public String digest() {
+        return digest;
+    }
+
+    public Instant modifiedAt() {
+        return modifiedAt;
+    }
+
+    public List<Flight> search(FlightSearchCriteria criteria, int skip, int limit) {
+        return scan(criteria, 0, skip, limit);
+    }
+
+    // Keyset page: the flights strictly after the cursor, found by binary search instead of skipping
+    public List<Flight> searchAfter(FlightSearchCriteria criteria, FlightCursor cursor, int limit) {
+        int start = cursor == null ? 0 : firstAfter(cursor.toProbe());
+        return scan(criteria, start, 0, limit);
+    }
+
+    private List<Flight> scan(FlightSearchCriteria criteria, int start, int skip, int limit) {
+        List<int[]> postings = new ArrayList<>();
+        addPosting(postings, byAirlineCode, criteria.airlineCode());
+        addPosting(postings, byFlightNumber, criteria.flightNumber());
+        addPosting(postings, byDirection, criteria.direction());
+        addPosting(postings, byCity, criteria.city());
+        addPosting(postings, byStatus, criteria.status());
+        addPosting(postings, byScheduledDate, criteria.scheduledDate());
+        addPosting(postings, byEstimatedDate, criteria.estimatedDate());
+
+        // Mirrors Mongo: limit 0 means no limit, a negative limit returns a single batch of |limit|
+        int max = limit == 0 ? Integer.MAX_VALUE : Math.abs(limit);
+        List<Flight> result = new ArrayList<>(Math.min(max, flights.size()));
+        int skipped = 0;
+
+        if (postings.isEmpty()) {
+            for (int position = start; position < flights.size() && result.size() < max; position++) {
+                if (skipped++ < skip) continue;
+                result.add(flights.get(position));
+            }
+            return result;
+        }
+
+        postings.sort(Comparator.comparingInt(posting -> posting.length));
+        int[] smallest = postings.get(0);
+        for (int i = lowerBound(smallest, start); i < smallest.length && result.size() < max; i++) {
+            int position = smallest[i];
+            if (!inAll(postings, position)) continue;
+            if (skipped++ < skip) continue;
+            result.add(flights.get(position));
+        }
+        return result;
+    }
+
+    private int firstAfter(Flight probe) {
+        int low = 0;
+        int high = flights.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ORDER.compare(flights.get(mid), probe) <= 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private static int lowerBound(int[] positions, int start) {
+        int index = Arrays.binarySearch(positions, start);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static <K> void addPosting(List<int[]> postings, Map<K, int[]> index, K key) {
+        if (key != null) postings.add(index.getOrDefault(key, new int[0]));
+    }
+
+    private static boolean inAll(List<int[]> postings, int position) {
+        for (int i = 1; i < postings.size(); i++) {
+            if (Arrays.binarySearch(postings.get(i), position) < 0) return false;
+        }
+        return true;
+    }
+
+    private static LocalDate datePart(LocalDateTime time) {
+        return time != null ? time.toLocalDate() : null;
+    }
+
+    private static <K> Map<K, int[]> index(List<Flight> flights, Function<Flight, K> key) {
+        Map<K, List<Integer>> positions = new HashMap<>();
+        for (int position = 0; position < flights.size(); position++) {
+            K value = key.apply(flights.get(position));
+            if (value != null) positions.computeIfAbsent(value, k -> new ArrayList<>()).add(position);
+        }
+
+        Map<K, int[]> index = new HashMap<>(positions.size() * 2);
+        positions.forEach((value, list) -> index.put(value, list.stream().mapToInt(Integer::intValue).toArray()));
+        return Map.copyOf(index);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.reactivewings.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.reactivewings.model.Flight;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+// Holds the current FlightBoard; readers never block, a rebuilt board replaces the old one atomically
+@Service
+public class FlightBoardService {
+    private static final Logger log = LoggerFactory.getLogger(FlightBoardService.class);
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final AtomicReference<FlightBoard> board = new AtomicReference<>();
+    private final AtomicBoolean refreshInProgress = new AtomicBoolean(false);
+    private final AtomicBoolean refreshRequested = new AtomicBoolean(false);
+    private final AtomicLong generations = new AtomicLong();
+    private final Sinks.Many<FlightBoard> boards = Sinks.many().replay().latest();
+    private volatile LocalDateTime lastRefresh = LocalDateTime.MIN;
+
+    // Safety net for boards written by another instance; a local sync refreshes immediately
+    @Value("${flight-board.max-age-ms:60000}")
+    private long maxAgeMs;
+
+    public FlightBoardService(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public FlightBoard current() {
+        return board.get();
+    }
+
+    // Every board swapped in, starting with the current one; refreshes are serialised so emissions never overlap
+    public Flux<FlightBoard> boards() {
+        return boards.asFlux();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        refresh().subscribe();
+    }
+
+    @Scheduled(fixedDelay = 10000)
+    public void refreshIfStale() {
+        if (lastRefresh.isBefore(LocalDateTime.now().minus(Duration.ofMillis(maxAgeMs)))) {
+            refresh().subscribe();
+        }
+    }
+
+    // The guard is taken on subscription, so a refresh that is built but never subscribed can't leave it held
+    public Mono<FlightBoard> refresh() {
+        return Mono.defer(() -> {
+            if (!refreshInProgress.compareAndSet(false, true)) {
+                // Rebuild once more after the running refresh so its snapshot can't miss this request's writes
+                refreshRequested.set(true);
+                return Mono.empty();
+            }
+
+            return mongoTemplate.findAll(Flight.class)
+                .collectList()
+                .map(flights -> swapIfChanged(new FlightBoard(flights, generations.get() + 1)))
+                .doOnNext(current -> {
+                    lastRefresh = LocalDateTime.now();
+                    log.debug("Flight board at generation {} with {} flights", current.generation(), current.size());
+                })
+                .doOnError(error -> log.error("Failed to rebuild flight board: {}", error.getMessage()))
+                .onErrorResume(error -> Mono.empty())
+                .doFinally(signal -> {
+                    refreshInProgress.set(false);
+                    if (refreshRequested.compareAndSet(true, false)) refresh().subscribe();
+                });
+        });
+    }
+
+    // Identical content keeps the current board, so its generation, digest and modification time stay put
+    private FlightBoard swapIfChanged(FlightBoard next) {
+        FlightBoard current = board.get();
+        if (current != null && current.digest().equals(next.digest())) {
+            return current;
+        }
+
+        generations.incrementAndGet();
+        board.set(next);
+        boards.tryEmitNext(next);
+        return next;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.reactivewings.service;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.reactivewings.model.FlightChange;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+/**
+ * In-process flight changes, used when the matcher doesn't follow a change stream. Changes are
+ * only buffered once {@link #activate} selected this mode, and a full buffer makes
+ * {@link #publish} wait for the matcher instead of dropping changes, so callers must be on a
+ * thread that may block.
+ */
+@Component
+public class FlightChangePublisher {
+    private static final Logger log = LoggerFactory.getLogger(FlightChangePublisher.class);
+
+    private static final long RETRY_PAUSE_NANOS = Duration.ofMillis(1).toNanos();
+
+    private final Sinks.Many<FlightChange> sink;
+    private final Duration publishTimeout;
+    private volatile boolean active;
+
+    public FlightChangePublisher(@Value("${flight-changes.buffer-size:8192}") int bufferSize,
+                                 @Value("${flight-changes.publish-timeout-ms:60000}") long publishTimeoutMs) {
+        this.sink = Sinks.many().multicast().onBackpressureBuffer(bufferSize, false);
+        this.publishTimeout = Duration.ofMillis(publishTimeoutMs);
+    }
+
+    public void activate() {
+        active = true;
+    }
+
+    // Retries an overflow until the matcher drained some of the buffer; only a matcher stuck past the timeout loses the change
+    public synchronized void publish(FlightChange change) {
+        if (!active) return;
+
+        long deadline = System.nanoTime() + publishTimeout.toNanos();
+        Sinks.EmitResult result;
+        while ((result = sink.tryEmitNext(change)) == Sinks.EmitResult.FAIL_OVERFLOW && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(RETRY_PAUSE_NANOS);
+        }
+        if (result.isFailure()) {
+            log.warn("Dropped {} change for flight {}: {}", change.type(), change.flight().getFlightId(), result);
+        }
+    }
+
+    public Flux<FlightChange> changes() {
+        return sink.asFlux();
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.reactivewings.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.example.reactivewings.model.Flight;
+import com.example.reactivewings.model.FlightChange;
+import com.example.reactivewings.model.Subscription;
+import com.mongodb.client.model.changestream.OperationType;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+/**
+ * Source of flight changes for the subscription matcher. On a replica set every instance tails
+ * the flights change stream. When subscriptions are partitioned by user across the cluster, every
+ * instance passes every change downstream and the matcher keeps its own users; otherwise each
+ * change is handed downstream by exactly one instance: the one that wins the insert of its claim
+ * document. Every node checkpoints its own resume token in Mongo once the matcher has
+ * {@link #acknowledge acknowledged} the changes before it, so a failed stream is reopened with
+ * backoff where this node left off and replays what it had not matched yet. When there is no
+ * checkpoint to resume from, because the node is new or the token fell off the oplog, the stream
+ * starts from now and reports a {@link #gaps gap}, which the matcher closes by matching the whole
+ * board. On a standalone server it uses the in-process {@link FlightChangePublisher} instead.
+ */
+@Service
+public class FlightChangeStreamConsumer {
+    private static final Logger log = LoggerFactory.getLogger(FlightChangeStreamConsumer.class);
+
+    private static final String FLIGHTS = "flights";
+    private static final String SUBSCRIPTIONS = "subscriptions";
+    private static final String CLAIMS = "flight_change_claims";
+    private static final String CHECKPOINTS = "change_stream_checkpoints";
+    private static final String CHECKPOINT_PREFIX = "flights-notifier:";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final FlightChangePublisher changePublisher;
+    private final SubscriptionIndex subscriptionIndex;
+    private final FlightReminderScheduler reminders;
+    private final ClusterCoordinator coordinator;
+    private final Sinks.Many<Boolean> gaps = Sinks.many().multicast().directBestEffort();
+
+    // auto: change stream on replica sets, in-process events otherwise; change-stream / local force one of them
+    @Value("${flight-changes.source:auto}")
+    private String source;
+
+    @Value("${flight-changes.partition-by-user:true}")
+    private boolean partitionByUser;
+
+    @Value("${flight-changes.claim-retention-hours:24}")
+    private long claimRetentionHours;
+
+    // Checkpoints of nodes that stopped for good expire; a node that comes back after that starts with a gap
+    @Value("${flight-changes.checkpoint-retention-hours:168}")
+    private long checkpointRetentionHours;
+
+    @Value("${flight-changes.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Value("${flight-changes.max-retry-backoff-ms:60000}")
+    private long maxRetryBackoffMs;
+
+    public FlightChangeStreamConsumer(ReactiveMongoTemplate mongoTemplate,
+                                      FlightChangePublisher changePublisher,
+                                      SubscriptionIndex subscriptionIndex,
+                                      FlightReminderScheduler reminders,
+                                      ClusterCoordinator coordinator) {
+        this.mongoTemplate = mongoTemplate;
+        this.changePublisher = changePublisher;
+        this.subscriptionIndex = subscriptionIndex;
+        this.reminders = reminders;
+        this.coordinator = coordinator;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void watchSubscriptions() {
+        useChangeStream()
+            .filter(enabled -> enabled)
+            .flatMapMany(enabled -> mongoTemplate.changeStream(SUBSCRIPTIONS,
+                ChangeStreamOptions.builder().returnFullDocumentOnUpdate().build(), Subscription.class))
+            .subscribe(event -> {
+                if (event.getBody() != null) {
+                    subscriptionIndex.add(event.getBody());
+                    reminders.schedule(event.getBody());
+                } else if (event.getOperationType() == OperationType.DELETE && event.getRaw() != null) {
+                    String id = event.getRaw().getDocumentKey().get("_id").asString().getValue();
+                    subscriptionIndex.remove(id);
+                    reminders.cancel(id);
+                }
+            }, error -> log.warn("Stopped following subscription changes: {}", error.getMessage()));
+    }
+
+    public Flux<FlightChange> changes() {
+        return useChangeStream()
+            .flatMapMany(enabled -> {
+                if (!enabled) {
+                    log.info("Using in-process flight change events");
+                    changePublisher.activate();
+                    return changePublisher.changes();
+                }
+                if (coordinator.isPartitioned()) {
+                    log.info("Following every flights change as node {}, matching only this node's users", coordinator.nodeId());
+                    return ensureCheckpointIndex().thenMany(streamChanges(false));
+                }
+                log.info("Following the flights change stream as node {}", coordinator.nodeId());
+                return ensureCheckpointIndex().then(ensureClaimIndex()).thenMany(streamChanges(true));
+            });
+    }
+
+    // Emits when changes may have been missed because the stream could not resume from its checkpoint
+    public Flux<Boolean> gaps() {
+        return gaps.asFlux();
+    }
+
+    // Saves the position of the last change once the matcher has processed the batch
+    public Mono<Void> acknowledge(List<FlightChange> changes) {
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            String token = changes.get(i).resumeToken();
+            if (token != null) return saveResumeToken(token);
+        }
+        return Mono.empty();
+    }
+
+    // Decided before the first match: partitioning needs every node to see every change, so only a change stream allows it
+    public Mono<Boolean> partitioned() {
+        return useChangeStream()
+            .doOnNext(enabled -> {
+                if (!enabled) changePublisher.activate();
+                else if (partitionByUser) coordinator.partitionByUser();
+            })
+            .map(enabled -> coordinator.isPartitioned());
+    }
+
+    private Mono<Boolean> useChangeStream() {
+        if ("local".equalsIgnoreCase(source)) return Mono.just(false);
+        if ("change-stream".equalsIgnoreCase(source)) return Mono.just(true);
+
+        return mongoTemplate.executeCommand("{ hello: 1 }")
+            .map(reply -> reply.containsKey("setName"))
+            .onErrorResume(error -> {
+                log.warn("Could not determine the Mongo topology: {}", error.getMessage());
+                return Mono.just(false);
+            });
+    }
+
+    // Each retry reopens from this node's checkpoint, so the node keeps receiving its users' changes
+    private Flux<FlightChange> streamChanges(boolean claimed) {
+        return Flux.defer(() -> loadResumeToken()
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMapMany(this::resumeStream))
+            .filter(event -> event.getResumeToken() != null && event.getResumeToken().isDocument())
+            .concatMap(event -> {
+                FlightChange change = toChange(event).withResumeToken(event.getResumeToken().asDocument().toJson());
+                return claimed
+                    ? claim(change.resumeToken()).filter(won -> won).map(won -> change)
+                    : Mono.just(change);
+            })
+            .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(retryBackoffMs))
+                .maxBackoff(Duration.ofMillis(maxRetryBackoffMs))
+                .transientErrors(true)
+                .doBeforeRetry(signal -> log.error("Flights change stream failed, reopening: {}", signal.failure().getMessage())));
+    }
+
+    private Flux<ChangeStreamEvent<Flight>> resumeStream(Optional<BsonValue> token) {
+        if (token.isEmpty()) {
+            log.info("No flights change stream checkpoint for node {}, starting from now and matching the whole board", coordinator.nodeId());
+            return openStream(token).doOnSubscribe(subscription -> gaps.tryEmitNext(true));
+        }
+        // A stream that fails before its first event most likely could not resume; later failures are retried from the checkpoint
+        AtomicBoolean resumed = new AtomicBoolean();
+        return openStream(token)
+            .doOnNext(event -> resumed.set(true))
+            .onErrorResume(error -> !resumed.get(), error -> {
+                log.warn("Could not resume the flights change stream, starting from now and matching the whole board: {}", error.getMessage());
+                return openStream(Optional.empty()).doOnSubscribe(subscription -> gaps.tryEmitNext(true));
+            });
+    }
+
+    private Flux<ChangeStreamEvent<Flight>> openStream(Optional<BsonValue> resumeToken) {
+        ChangeStreamOptions.ChangeStreamOptionsBuilder options = ChangeStreamOptions.builder()
+            .filter(Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("operationType").in("insert", "update", "replace"))))
+            .returnFullDocumentOnUpdate();
+        resumeToken.ifPresent(options::resumeAfter);
+
+        return mongoTemplate.changeStream(FLIGHTS, options.build(), Flight.class)
+            .filter(event -> event.getBody() != null);
+    }
+
+    /*
+     * The resume token identifies the event itself, so a flight that returns to an earlier state is
+     * claimed again. A reopened stream replays events this node claimed before it failed, and those
+     * are still its own.
+     */
+    private Mono<Boolean> claim(String resumeToken) {
+        Document claim = new Document("_id", resumeToken)
+            .append("node", coordinator.nodeId())
+            .append("claimedAt", new Date());
+
+        return mongoTemplate.insert(claim, CLAIMS)
+            .thenReturn(true)
+            .onErrorResume(DuplicateKeyException.class, error -> mongoTemplate.exists(
+                Query.query(Criteria.where("_id").is(resumeToken).and("node").is(coordinator.nodeId())), CLAIMS));
+    }
+
+    private FlightChange toChange(ChangeStreamEvent<Flight> event) {
+        if (event.getOperationType() == OperationType.INSERT) {
+            return FlightChange.added(event.getBody());
+        }
+
+        Set<String> changedFields = Set.of();
+        if (event.getRaw() != null && event.getRaw().getUpdateDescription() != null
+                && event.getRaw().getUpdateDescription().getUpdatedFields() != null) {
+            changedFields = event.getRaw().getUpdateDescription().getUpdatedFields().keySet();
+        }
+        return FlightChange.updated(event.getBody(), changedFields);
+    }
+
+    private Mono<BsonValue> loadResumeToken() {
+        return mongoTemplate.findById(checkpointId(), Document.class, CHECKPOINTS)
+            .mapNotNull(checkpoint -> checkpoint.getString("token"))
+            .<BsonValue>map(BsonDocument::parse);
+    }
+
+    private Mono<Void> saveResumeToken(String token) {
+        Update update = Update.update("token", token)
+            .set("node", coordinator.nodeId())
+            .set("updatedAt", LocalDateTime.now());
+        return mongoTemplate.upsert(new Query(Criteria.where("_id").is(checkpointId())), update, CHECKPOINTS).then();
+    }
+
+    // Nodes that share a checkpoint would resume from each other's positions and skip their own unmatched changes
+    private String checkpointId() {
+        return CHECKPOINT_PREFIX + coordinator.nodeId();
+    }
+
+    private Mono<String> ensureCheckpointIndex() {
+        return mongoTemplate.indexOps(CHECKPOINTS)
+            .ensureIndex(new Index().on("updatedAt", Sort.Direction.ASC).expire(Duration.ofHours(checkpointRetentionHours)))
+            .onErrorResume(error -> {
+                log.warn("Could not create checkpoint TTL index: {}", error.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    private Mono<String> ensureClaimIndex() {
+        return mongoTemplate.indexOps(CLAIMS)
+            .ensureIndex(new Index().on("claimedAt", Sort.Direction.ASC).expire(Duration.ofHours(claimRetentionHours)))
+            .onErrorResume(error -> {
+                log.warn("Could not create claim TTL index: {}", error.getMessage());
+                return Mono.empty();
+            });
+    }
+}
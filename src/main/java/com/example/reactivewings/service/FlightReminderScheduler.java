@@ -0,0 +1,281 @@
+package com.example.reactivewings.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.example.reactivewings.model.FlightReminder;
+import com.example.reactivewings.model.FlightReminder.Kind;
+import com.example.reactivewings.model.Subscription;
+import com.example.reactivewings.utils.TimerWheel;
+import com.mongodb.bulk.BulkWriteUpsert;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+/**
+ * Sends "check-in opens", "departure soon" and "gate closing" reminders for subscribed departures.
+ * Each reminder is a timeout in a hierarchical {@link TimerWheel}, placed at the departure time
+ * (estimated, else scheduled) minus the reminder's lead time, so millions of pending reminders cost
+ * one list node each and moving an estimate replaces them in O(1). The wheel lives in memory on
+ * every instance and is rebuilt from the subscriptions at startup.
+ *
+ * <p>Due reminders are collected into batches. Each batch re-reads its subscriptions, drops
+ * reminders whose departure has moved since they were scheduled, and claims the rest in
+ * {@code reminder_claims}, so only one instance sends each reminder. A reminder whose email could
+ * not be delivered releases its claim and goes back into the wheel for another try, until its
+ * departure.
+ */
+@Service
+public class FlightReminderScheduler {
+    private static final Logger log = LoggerFactory.getLogger(FlightReminderScheduler.class);
+
+    private static final String CLAIMS = "reminder_claims";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final EmailSenderService emailSenderService;
+    private final TimerWheel<FlightReminder> wheel;
+    private final long tickMs;
+    private final Map<String, Map<Kind, TimerWheel.Timeout<FlightReminder>>> scheduled = new ConcurrentHashMap<>();
+    private final Map<Kind, Duration> leadTimes = new EnumMap<>(Kind.class);
+    private final Sinks.Many<FlightReminder> due = Sinks.many().unicast().onBackpressureBuffer();
+    private final ScheduledExecutorService ticker =
+        Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("flight-reminders", true));
+
+    @Value("${reminders.enabled:true}")
+    private boolean enabled;
+
+    @Value("${reminders.batch-size:500}")
+    private int batchSize;
+
+    @Value("${reminders.batch-window-ms:1000}")
+    private long batchWindowMs;
+
+    @Value("${reminders.claim-retention-hours:48}")
+    private long claimRetentionHours;
+
+    @Value("${reminders.retry-delay-ms:60000}")
+    private long retryDelayMs;
+
+    public FlightReminderScheduler(ReactiveMongoTemplate mongoTemplate,
+                                   EmailSenderService emailSenderService,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${reminders.tick-ms:1000}") long tickMs,
+                                   @Value("${reminders.wheel-size:512}") int wheelSize,
+                                   @Value("${reminders.checkin-opens-minutes:240}") long checkinOpensMinutes,
+                                   @Value("${reminders.departure-soon-minutes:180}") long departureSoonMinutes,
+                                   @Value("${reminders.gate-closing-minutes:45}") long gateClosingMinutes) {
+        this.mongoTemplate = mongoTemplate;
+        this.emailSenderService = emailSenderService;
+        this.tickMs = tickMs;
+        this.wheel = new TimerWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+        leadTimes.put(Kind.CHECKIN_OPENS, Duration.ofMinutes(checkinOpensMinutes));
+        leadTimes.put(Kind.DEPARTURE_SOON, Duration.ofMinutes(departureSoonMinutes));
+        leadTimes.put(Kind.GATE_CLOSING, Duration.ofMinutes(gateClosingMinutes));
+
+        Gauge.builder("reminders.pending", wheel, TimerWheel::size)
+            .description("Flight reminders waiting in the timer wheel")
+            .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+
+        due.asFlux()
+            .bufferTimeout(batchSize, Duration.ofMillis(batchWindowMs))
+            .concatMap(batch -> send(batch)
+                .onErrorResume(error -> {
+                    log.error("Sending {} reminders failed: {}", batch.size(), error.getMessage());
+                    return Mono.empty();
+                }))
+            .subscribe();
+
+        // Reminders scheduled by new subscriptions come due even while the load is still retrying
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+
+        ensureClaimIndex()
+            .thenMany(Flux.defer(this::upcomingDepartures))
+            .doOnNext(this::schedule)
+            .count()
+            .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                .maxBackoff(Duration.ofMinutes(1))
+                .doBeforeRetry(signal -> log.warn("Failed to load flight reminders, retrying: {}", signal.failure().getMessage())))
+            .subscribe(count -> log.info("Scheduled reminders for {} subscriptions", count));
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    // Called whenever a subscription is created or its flight times change; reminders already past are not sent late
+    public void schedule(Subscription subscription) {
+        if (!enabled || !"D".equals(subscription.getDirection())) return;
+        LocalDateTime departure = departureOf(subscription);
+        if (departure == null) return;
+
+        long now = System.currentTimeMillis();
+        scheduled.compute(subscription.getId(), (id, timeouts) -> {
+            if (timeouts == null) timeouts = new EnumMap<>(Kind.class);
+            for (Kind kind : Kind.values()) {
+                long deadline = toEpochMilli(departure.minus(leadTimes.get(kind)));
+                TimerWheel.Timeout<FlightReminder> timeout = timeouts.get(kind);
+                if (deadline <= now) {
+                    if (timeout != null) wheel.cancel(timeout);
+                    timeouts.remove(kind);
+                    continue;
+                }
+                FlightReminder reminder = new FlightReminder(id, kind, departure);
+                if (timeout != null && timeout.value().equals(reminder) && wheel.isPending(timeout)) continue;
+                // The reminder carries the departure it was computed from, so a moved departure gets a new timeout
+                if (timeout != null) wheel.cancel(timeout);
+                timeouts.put(kind, wheel.schedule(reminder, deadline));
+            }
+            return timeouts.isEmpty() ? null : timeouts;
+        });
+    }
+
+    public void cancel(String subscriptionId) {
+        Map<Kind, TimerWheel.Timeout<FlightReminder>> timeouts = scheduled.remove(subscriptionId);
+        if (timeouts != null) timeouts.values().forEach(wheel::cancel);
+    }
+
+    private void tick() {
+        try {
+            for (FlightReminder reminder : wheel.advance(System.currentTimeMillis())) {
+                scheduled.computeIfPresent(reminder.subscriptionId(), (id, timeouts) -> {
+                    timeouts.remove(reminder.kind());
+                    return timeouts.isEmpty() ? null : timeouts;
+                });
+                due.tryEmitNext(reminder);
+            }
+        } catch (RuntimeException e) {
+            log.error("Reminder tick failed: {}", e.getMessage());
+        }
+    }
+
+    private Flux<Subscription> upcomingDepartures() {
+        Query query = Query.query(Criteria.where("direction").is("D")
+            .and("scheduledTime").gte(LocalDateTime.now().minusDays(1)));
+        query.fields().include("direction", "scheduledTime", "estimatedTime");
+        return mongoTemplate.find(query, Subscription.class);
+    }
+
+    private Mono<Void> send(List<FlightReminder> batch) {
+        Set<String> ids = batch.stream().map(FlightReminder::subscriptionId).collect(Collectors.toSet());
+        return mongoTemplate.find(Query.query(Criteria.where("_id").in(ids)), Subscription.class)
+            .collectMap(Subscription::getId, Function.identity())
+            .flatMap(subscriptions -> {
+                List<FlightReminder> current = batch.stream()
+                    .filter(reminder -> {
+                        Subscription subscription = subscriptions.get(reminder.subscriptionId());
+                        return subscription != null && reminder.departure().equals(departureOf(subscription));
+                    })
+                    .toList();
+                return claim(current)
+                    .flatMapMany(Flux::fromIterable)
+                    .flatMap(reminder -> emailSenderService.sendFlightReminderAsync(reminder, subscriptions.get(reminder.subscriptionId()))
+                        .onErrorResume(error -> release(reminder, error)))
+                    .then();
+            });
+    }
+
+    // Drops the claim so this or another instance can send the reminder again, then retries it from the wheel
+    private Mono<Void> release(FlightReminder reminder, Throwable error) {
+        log.warn("Could not send {} reminder for subscription {}: {}", reminder.kind(), reminder.subscriptionId(), error.getMessage());
+        return mongoTemplate.remove(Query.query(Criteria.where("_id").is(reminder.claimId())), CLAIMS)
+            .doOnSuccess(result -> retryLater(reminder))
+            .onErrorResume(removeError -> {
+                log.error("Could not release reminder claim {}: {}", reminder.claimId(), removeError.getMessage());
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    // A reminder rescheduled in the meantime, or one whose retry would come after departure, is left alone
+    private void retryLater(FlightReminder reminder) {
+        long deadline = System.currentTimeMillis() + retryDelayMs;
+        if (deadline >= toEpochMilli(reminder.departure())) return;
+
+        scheduled.compute(reminder.subscriptionId(), (id, timeouts) -> {
+            if (timeouts == null) timeouts = new EnumMap<>(Kind.class);
+            timeouts.computeIfAbsent(reminder.kind(), kind -> wheel.schedule(reminder, deadline));
+            return timeouts;
+        });
+    }
+
+    // Upserted indexes are the reminders no other instance sent
+    private Mono<List<FlightReminder>> claim(List<FlightReminder> reminders) {
+        if (reminders.isEmpty()) return Mono.just(List.of());
+
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CLAIMS);
+        LocalDateTime now = LocalDateTime.now();
+        reminders.forEach(reminder -> bulk.upsert(Query.query(Criteria.where("_id").is(reminder.claimId())),
+            new Update().setOnInsert("claimedAt", now)));
+
+        return bulk.execute().map(result -> {
+            Set<Integer> claimed = new HashSet<>();
+            result.getUpserts().stream().map(BulkWriteUpsert::getIndex).forEach(claimed::add);
+            return IntStream.range(0, reminders.size())
+                .filter(claimed::contains)
+                .mapToObj(reminders::get)
+                .toList();
+        });
+    }
+
+    private Mono<String> ensureClaimIndex() {
+        return mongoTemplate.indexOps(CLAIMS)
+            .ensureIndex(new Index().on("claimedAt", Sort.Direction.ASC).expire(Duration.ofHours(claimRetentionHours)))
+            .onErrorResume(error -> {
+                log.warn("Could not create reminder claim TTL index: {}", error.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    // Minute precision, so a re-read of the same estimate compares equal
+    private static LocalDateTime departureOf(Subscription subscription) {
+        LocalDateTime departure = subscription.getEstimatedTime() != null
+            ? subscription.getEstimatedTime()
+            : subscription.getScheduledTime();
+        return departure == null ? null : departure.truncatedTo(ChronoUnit.MINUTES);
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
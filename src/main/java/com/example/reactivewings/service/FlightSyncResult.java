@@ -0,0 +1,21 @@
+package com.example.reactivewings.service;
+
+public record FlightSyncResult(long inserted, long updated, long unchanged, long removed) {
+    public static final FlightSyncResult EMPTY = new FlightSyncResult(0, 0, 0, 0);
+
+    public FlightSyncResult plus(FlightSyncResult other) {
+        return new FlightSyncResult(
+            inserted + other.inserted,
+            updated + other.updated,
+            unchanged + other.unchanged,
+            removed + other.removed);
+    }
+
+    public long total() {
+        return inserted + updated + unchanged;
+    }
+
+    public boolean changed() {
+        return inserted + updated + removed > 0;
+    }
+}
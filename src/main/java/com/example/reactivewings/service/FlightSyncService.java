@@ -1,71 +1,352 @@
 package com.example.reactivewings.service;
 
+import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 import org.springframework.stereotype.Service;
 
 import com.example.reactivewings.model.Flight;
-import com.example.reactivewings.repo.FlightRepository;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.reactivewings.model.FlightChange;
+import com.example.reactivewings.utils.FlightSyncUtils;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
-public class FlightSyncService {
-    
+public class FlightSyncService implements SchedulingConfigurer {
+
     private static final Logger log = LoggerFactory.getLogger(FlightSyncService.class);
 
-    private final FlightRepository flightRepository;
+    private static final String INGEST_LEASE = "flight-ingest";
+
     private final BenGurionAPI bgnAPI;
-    private final ObjectMapper objectMapper;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final FlightChangePublisher changePublisher;
+    private final FlightBoardService boardService;
+    private final ClusterCoordinator coordinator;
     private final AtomicBoolean syncInProgress = new AtomicBoolean(false);
 
-    public FlightSyncService(FlightRepository flightRepository,
-                             BenGurionAPI bgnAPI,
-                             ObjectMapper objectMapper) {
-        this.flightRepository = flightRepository;
+    private AdaptiveSyncTrigger syncTrigger;
+    private volatile FeedVersion feedVersion;
+    private volatile LocalDateTime lastFullSync;
+    private volatile boolean trustFeedVersion = true;
+
+    public FlightSyncService(BenGurionAPI bgnAPI,
+                             ReactiveMongoTemplate mongoTemplate,
+                             FlightChangePublisher changePublisher,
+                             FlightBoardService boardService,
+                             ClusterCoordinator coordinator) {
         this.bgnAPI = bgnAPI;
-        this.objectMapper = objectMapper;
+        this.mongoTemplate = mongoTemplate;
+        this.changePublisher = changePublisher;
+        this.boardService = boardService;
+        this.coordinator = coordinator;
     }
-    
+
     @Value("${flight-sync.batch-size:50}")
     private int batchSize;
-    
-    @Scheduled(fixedDelay = 60000)
+
+    // "upsert" writes only new/changed flights keyed on flightId, "replace" re-inserts the whole board
+    @Value("${flight-sync.mode:upsert}")
+    private String syncMode;
+
+    @Value("${flight-sync.min-interval-ms:20000}")
+    private long minIntervalMs;
+
+    @Value("${flight-sync.interval-ms:60000}")
+    private long intervalMs;
+
+    @Value("${flight-sync.max-interval-ms:300000}")
+    private long maxIntervalMs;
+
+    @Value("${flight-sync.busy-window-minutes:45}")
+    private long busyWindowMinutes;
+
+    @Value("${flight-sync.busy-threshold:25}")
+    private int busyThreshold;
+
+    // Upper bound on how long an unchanged feed version may suppress a full fetch
+    @Value("${flight-sync.max-staleness-ms:600000}")
+    private long maxStalenessMs;
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        syncTrigger = new AdaptiveSyncTrigger(
+            Duration.ofMillis(minIntervalMs),
+            Duration.ofMillis(intervalMs),
+            Duration.ofMillis(maxIntervalMs),
+            Duration.ofMinutes(busyWindowMinutes),
+            busyThreshold);
+        registrar.addTriggerTask(this::syncFlightsFromAPI, syncTrigger);
+    }
+
+    // Only the holder of the ingest lease syncs; the other nodes read the board it writes
     public void syncFlightsFromAPI() {
         if (!syncInProgress.compareAndSet(false, true)) {
             log.debug("Sync already in progress, skipping");
             return;
         }
-        
-        log.info("Starting flight sync");
-        
-        fetchAndReplaceFlights()
-            .doOnSuccess(count -> log.info("Successfully synced {} flights", count))
+
+        coordinator.acquire(INGEST_LEASE)
+            .switchIfEmpty(Mono.fromRunnable(() -> log.debug("Another node holds the ingest lease, skipping")))
+            .flatMap(this::sync)
+            .doOnSuccess(result -> {
+                if (result != null) syncTrigger.recordRun(result.changed());
+            })
             .doOnError(error -> log.error("Sync failed: {}", error.getMessage()))
             .doFinally(signal -> syncInProgress.set(false))
             .subscribe();
     }
-    
-    private Mono<Long> fetchAndReplaceFlights() {
-        LocalDateTime syncTime = LocalDateTime.now();
-        
-        return bgnAPI.getBenGurionFlightRecords()
-            .map(record -> {
-                Flight flight = objectMapper.convertValue(record, Flight.class);
-                flight.setLastUpdated(syncTime);
-                return flight;
+
+    private Mono<FlightSyncResult> sync(long fence) {
+        return bgnAPI.getFeedVersion(feedVersion)
+            .map(Optional::of)
+            .onErrorResume(error -> {
+                log.debug("Feed version probe failed, falling back to a full fetch: {}", error.getMessage());
+                return Mono.just(Optional.empty());
             })
-            .buffer(batchSize)
-            .flatMap(batch -> flightRepository.saveAll(batch).count())
-            .reduce(0L, Long::sum)
-            .flatMap(savedCount -> 
-                flightRepository.deleteByLastUpdatedBefore(syncTime)
-                    .doOnSuccess(deleted -> log.debug("Removed {} outdated records", deleted))
-                    .thenReturn(savedCount)
-            );
+            .defaultIfEmpty(Optional.empty())
+            .flatMap(version -> {
+                boolean versionUnchanged = version.isPresent() && version.get().matches(feedVersion);
+                if (versionUnchanged && trustFeedVersion && !fullSyncDue()) {
+                    log.debug("Feed version unchanged, skipping fetch");
+                    return Mono.just(FlightSyncResult.EMPTY);
+                }
+
+                log.info("Starting flight sync ({} mode)", syncMode);
+                return fullSync(fence)
+                    .doOnSuccess(result -> {
+                        if (versionUnchanged && result.changed() && trustFeedVersion) {
+                            log.warn("Feed changed without a new version; relying on content hashes from now on");
+                            trustFeedVersion = false;
+                        }
+                        feedVersion = version.orElse(null);
+                        lastFullSync = LocalDateTime.now();
+                        log.info("Successfully synced {} flights: {} inserted, {} updated, {} unchanged, {} removed",
+                            result.total(), result.inserted(), result.updated(), result.unchanged(), result.removed());
+                    });
+            });
+    }
+
+    private boolean fullSyncDue() {
+        return lastFullSync == null
+            || lastFullSync.isBefore(LocalDateTime.now().minus(Duration.ofMillis(maxStalenessMs)));
+    }
+
+    private Mono<FlightSyncResult> fullSync(long fence) {
+        List<LocalDateTime> movements = new ArrayList<>();
+
+        Mono<FlightSyncResult> sync = "replace".equalsIgnoreCase(syncMode)
+            ? fetchAndReplaceFlights(movements, fence)
+            : fetchAndUpsertFlights(movements, fence);
+
+        return sync
+            .doOnSuccess(result -> syncTrigger.recordMovements(movements))
+            .flatMap(result -> result.changed()
+                ? boardService.refresh().thenReturn(result)
+                : Mono.just(result));
+    }
+
+    // Rewrites every fetched flight, then removes the flights this sync did not touch
+    private Mono<FlightSyncResult> fetchAndReplaceFlights(List<LocalDateTime> movements, long fence) {
+        LocalDateTime syncTime = LocalDateTime.now();
+
+        return loadExistingFlights().flatMap(existing -> {
+            Set<Long> seen = ConcurrentHashMap.newKeySet();
+            List<FlightChange> changes = new ArrayList<>();
+            FetchCount fetched = new FetchCount();
+
+            return bgnAPI.getBenGurionFlights(fetched::expect)
+                .doOnNext(fetched::record)
+                .filter(flight -> flight.getFlightId() != null && seen.add(flight.getFlightId()))
+                .doOnNext(flight -> recordMovement(flight, movements))
+                .map(flight -> {
+                    FlightChange change = diff(flight, existing.get(flight.getFlightId()));
+                    if (change != null) changes.add(change);
+                    flight.setLastUpdated(syncTime);
+                    return flight;
+                })
+                .buffer(batchSize)
+                .flatMap(batch -> fenced(fence, upsertBatch(batch, fence)))
+                .reduce(FlightSyncResult.EMPTY, FlightSyncResult::plus)
+                .flatMap(result -> {
+                    // An empty feed is far more likely an upstream hiccup than an empty airport
+                    if (seen.isEmpty() || !fetched.isComplete()) return Mono.just(result);
+                    return fenced(fence, removeOutdatedFlights(syncTime, fence))
+                        .flatMap(deleted -> publish(removalsOf(existing, seen))
+                            .thenReturn(result.plus(new FlightSyncResult(0, 0, 0, deleted))));
+                })
+                .flatMap(result -> publish(changes).thenReturn(result));
+        });
+    }
+
+    private Mono<FlightSyncResult> fetchAndUpsertFlights(List<LocalDateTime> movements, long fence) {
+        LocalDateTime syncTime = LocalDateTime.now();
+
+        return loadExistingFlights().flatMap(existing -> {
+            Set<Long> seen = ConcurrentHashMap.newKeySet();
+            AtomicLong unchanged = new AtomicLong();
+            FetchCount fetched = new FetchCount();
+
+            return bgnAPI.getBenGurionFlights(fetched::expect)
+                .doOnNext(fetched::record)
+                .filter(flight -> flight.getFlightId() != null && seen.add(flight.getFlightId()))
+                .doOnNext(flight -> recordMovement(flight, movements))
+                .<FlightChange>handle((flight, sink) -> {
+                    Flight previous = existing.get(flight.getFlightId());
+                    FlightChange change = diff(flight, previous);
+                    if (change == null) {
+                        unchanged.incrementAndGet();
+                        return;
+                    }
+                    if (previous != null) flight.setId(previous.getId());
+                    flight.setLastUpdated(syncTime);
+                    sink.next(change);
+                })
+                .buffer(batchSize)
+                .flatMap(changes -> fenced(fence, upsertBatch(changes.stream().map(FlightChange::flight).toList(), fence))
+                    .flatMap(result -> publish(changes).thenReturn(result)))
+                .reduce(FlightSyncResult.EMPTY, FlightSyncResult::plus)
+                .flatMap(result -> {
+                    FlightSyncResult kept = result.plus(new FlightSyncResult(0, 0, unchanged.get(), 0));
+                    if (!fetched.isComplete()) return Mono.just(kept);
+                    return fenced(fence, removeDepartedFlights(seen, fence))
+                        .flatMap(removed -> publish(removalsOf(existing, seen))
+                            .thenReturn(kept.plus(new FlightSyncResult(0, 0, 0, removed))));
+                });
+        });
+    }
+
+    /*
+     * Stops a node that lost the lease before its next write. The check alone races with a takeover,
+     * so the writes themselves stamp the token and skip flights a newer holder wrote.
+     */
+    private <T> Mono<T> fenced(long fence, Mono<T> write) {
+        return coordinator.checkFence(INGEST_LEASE, fence).then(write);
+    }
+
+    // Stamps the content hash on the incoming flight and returns its change, or null when nothing changed
+    private static FlightChange diff(Flight flight, Flight previous) {
+        flight.setContentHash(FlightSyncUtils.contentHash(flight));
+        if (previous == null) {
+            return FlightChange.added(flight);
+        }
+        if (flight.getContentHash().equals(previous.getContentHash())) {
+            return null;
+        }
+        return FlightChange.updated(flight, FlightSyncUtils.changedFields(previous, flight));
+    }
+
+    // The publisher blocks while the matcher catches up, so changes are handed over off the Mongo threads
+    private Mono<Void> publish(List<FlightChange> changes) {
+        if (changes.isEmpty()) return Mono.empty();
+        return Mono.fromRunnable(() -> changes.forEach(changePublisher::publish))
+            .subscribeOn(Schedulers.boundedElastic())
+            .then();
+    }
+
+    private static List<FlightChange> removalsOf(Map<Long, Flight> existing, Set<Long> seen) {
+        if (seen.isEmpty()) return List.of();
+        return existing.values().stream()
+            .filter(flight -> !seen.contains(flight.getFlightId()))
+            .map(FlightChange::removed)
+            .toList();
+    }
+
+    private static void recordMovement(Flight flight, List<LocalDateTime> movements) {
+        LocalDateTime time = FlightSyncUtils.movementTime(flight);
+        if (time != null) movements.add(time);
+    }
+
+    private Mono<Map<Long, Flight>> loadExistingFlights() {
+        return mongoTemplate.find(new Query(Criteria.where("flightId").ne(null)), Flight.class)
+            .collectMap(Flight::getFlightId);
+    }
+
+    /*
+     * Whole documents are replaced, so a value the feed cleared (a gate, an actual time) is cleared
+     * here too. A flight stamped with a newer fence doesn't match, and its upsert then fails on the
+     * unique flightId index instead of overwriting it.
+     */
+    private Mono<FlightSyncResult> upsertBatch(List<Flight> batch, long fence) {
+        ReactiveBulkOperations ops = mongoTemplate.bulkOps(BulkMode.UNORDERED, Flight.class);
+        batch.forEach(flight -> {
+            flight.setFence(fence);
+            ops.replaceOne(
+                ClusterCoordinator.fenced(Criteria.where("flightId").is(flight.getFlightId()), fence),
+                toDocument(flight),
+                FindAndReplaceOptions.options().upsert());
+        });
+
+        return ops.execute()
+            .map(result -> new FlightSyncResult(result.getUpserts().size(), result.getModifiedCount(), 0, 0));
+    }
+
+    private Document toDocument(Flight flight) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(flight, document);
+        document.remove("_id");
+        return document;
+    }
+
+    /*
+     * Counts the records of one fetch against the total the feed reported. Offset paging skips
+     * records when the feed shifts between pages, and a flight missing from a short fetch is not
+     * a departed flight, so nothing is removed unless every record arrived.
+     */
+    private static final class FetchCount {
+        private final AtomicLong expected = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong received = new AtomicLong();
+
+        void expect(long total) {
+            expected.set(total);
+        }
+
+        void record(Flight flight) {
+            received.incrementAndGet();
+        }
+
+        boolean isComplete() {
+            boolean complete = received.get() >= expected.get();
+            if (!complete) {
+                log.warn("Fetched {} of {} flights, keeping flights missing from the feed until a complete fetch", received.get(), expected.get());
+            }
+            return complete;
+        }
+    }
+
+    private Mono<Long> removeDepartedFlights(Set<Long> seen, long fence) {
+        // An empty feed is far more likely an upstream hiccup than an empty airport
+        if (seen.isEmpty()) {
+            return Mono.just(0L);
+        }
+
+        return mongoTemplate.remove(ClusterCoordinator.fenced(Criteria.where("flightId").nin(seen), fence), Flight.class)
+            .map(deleteResult -> deleteResult.getDeletedCount())
+            .doOnSuccess(deleted -> log.debug("Removed {} departed flights", deleted));
+    }
+
+    private Mono<Long> removeOutdatedFlights(LocalDateTime syncTime, long fence) {
+        return mongoTemplate.remove(ClusterCoordinator.fenced(Criteria.where("lastUpdated").lt(syncTime), fence), Flight.class)
+            .map(deleteResult -> deleteResult.getDeletedCount())
+            .doOnSuccess(deleted -> log.debug("Removed {} outdated records", deleted));
     }
 }
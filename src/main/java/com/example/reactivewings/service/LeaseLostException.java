@@ -0,0 +1,7 @@
+package com.example.reactivewings.service;
+
+public class LeaseLostException extends RuntimeException {
+    public LeaseLostException(String lease, long token) {
+        super("Lease " + lease + " with token " + token + " is no longer held");
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.reactivewings.service;
+
+import java.util.concurrent.Executors;
+
+import com.sendgrid.Method;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import com.sendgrid.SendGrid;
+import com.sendgrid.helpers.mail.Mail;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+// The blocking SendGrid SDK, run on virtual threads so a slow request doesn't pin a platform thread
+public class LegacySendGridTransport implements MailTransport {
+    private final SendGrid sendGrid;
+    private final Scheduler scheduler = Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "sendgrid");
+
+    public LegacySendGridTransport(String apiKey) {
+        this.sendGrid = new SendGrid(apiKey);
+    }
+
+    @Override
+    public Mono<Integer> send(Mail mail) {
+        return Mono.fromCallable(() -> {
+                Request request = new Request();
+                request.setMethod(Method.POST);
+                request.setEndpoint("mail/send");
+                request.setBody(mail.build());
+
+                Response response = sendGrid.api(request);
+                if (response.getStatusCode() >= 400) {
+                    throw new MailDeliveryException(response.getStatusCode(), response.getBody());
+                }
+                return response.getStatusCode();
+            })
+            .subscribeOn(scheduler);
+    }
+
+    @Override
+    public void close() {
+        scheduler.dispose();
+    }
+}
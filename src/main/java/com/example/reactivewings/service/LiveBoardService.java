@@ -0,0 +1,100 @@
+package com.example.reactivewings.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.stereotype.Service;
+
+import com.example.reactivewings.model.Flight;
+import com.example.reactivewings.model.FlightBoardFrame;
+import com.example.reactivewings.model.FlightSearchCriteria;
+import com.example.reactivewings.utils.FlightSyncUtils;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Live board channel. Each distinct filter gets one shared view that diffs consecutive board
+ * snapshots once per rebuild, however many clients watch it. A client gets a snapshot first and
+ * then the deltas that continue from its generation; if it fell behind, it is sent a fresh snapshot.
+ */
+@Service
+public class LiveBoardService {
+    private final FlightBoardService boardService;
+    private final Map<FlightSearchCriteria, Flux<Transition>> views = new ConcurrentHashMap<>();
+
+    public LiveBoardService(FlightBoardService boardService) {
+        this.boardService = boardService;
+    }
+
+    public Flux<FlightBoardFrame> frames(FlightSearchCriteria criteria) {
+        return Flux.defer(() -> {
+            AtomicLong generation = new AtomicLong(-1);
+            FlightBoard board = boardService.current();
+            Flux<FlightBoardFrame> initial = board == null
+                ? Flux.empty()
+                : Flux.just(snapshot(criteria, board, generation));
+
+            Flux<FlightBoardFrame> updates = view(criteria)
+                .onBackpressureLatest()
+                .concatMap(transition -> {
+                    long to = transition.to().generation();
+                    if (to <= generation.get()) return Flux.empty();
+                    if (transition.from() != null && transition.from().generation() == generation.get()) {
+                        generation.set(to);
+                        return transition.delta().isEmpty() ? Flux.empty() : Flux.just(transition.delta());
+                    }
+                    return Flux.just(snapshot(criteria, transition.to(), generation));
+                }, 1);
+
+            return initial.concatWith(updates);
+        });
+    }
+
+    private Flux<Transition> view(FlightSearchCriteria criteria) {
+        return views.computeIfAbsent(criteria, key -> Flux.defer(() -> {
+                AtomicReference<FlightBoard> previous = new AtomicReference<>();
+                return boardService.boards().map(board -> {
+                    FlightBoard from = previous.getAndSet(board);
+                    return new Transition(from, board, from == null ? null : diff(key, from, board));
+                });
+            })
+            .doFinally(signal -> views.remove(key))
+            .share());
+    }
+
+    private static FlightBoardFrame snapshot(FlightSearchCriteria criteria, FlightBoard board, AtomicLong generation) {
+        generation.set(board.generation());
+        return FlightBoardFrame.snapshot(board.generation(), board.search(criteria, 0, 0));
+    }
+
+    static FlightBoardFrame diff(FlightSearchCriteria criteria, FlightBoard from, FlightBoard to) {
+        Map<Long, Flight> before = new LinkedHashMap<>();
+        from.search(criteria, 0, 0).forEach(flight -> before.put(flight.getFlightId(), flight));
+
+        List<Flight> added = new ArrayList<>();
+        List<Map<String, Object>> changed = new ArrayList<>();
+        for (Flight flight : to.search(criteria, 0, 0)) {
+            Flight previous = before.remove(flight.getFlightId());
+            if (previous == null) {
+                added.add(flight);
+            } else if (!Objects.equals(previous.getContentHash(), flight.getContentHash())) {
+                Map<String, Object> fields = new LinkedHashMap<>();
+                fields.put("flightId", flight.getFlightId());
+                FlightSyncUtils.changedFields(previous, flight)
+                    .forEach(field -> fields.put(field, FlightSyncUtils.CONTENT_FIELDS.get(field).apply(flight)));
+                fields.put("lastUpdated", flight.getLastUpdated());
+                changed.add(fields);
+            }
+        }
+
+        return FlightBoardFrame.delta(to.generation(), added, changed, new ArrayList<>(before.keySet()));
+    }
+
+    private record Transition(FlightBoard from, FlightBoard to, FlightBoardFrame delta) {}
+}
@@ -0,0 +1,20 @@
+package com.example.reactivewings.service;
+
+import java.io.IOException;
+
+public class MailDeliveryException extends IOException {
+    private final int status;
+
+    public MailDeliveryException(int status, String body) {
+        super("SendGrid returned " + status + ": " + body);
+        this.status = status;
+    }
+
+    public int status() {
+        return status;
+    }
+
+    public boolean isTransient() {
+        return status == 429 || status >= 500;
+    }
+}
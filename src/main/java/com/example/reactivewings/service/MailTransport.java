@@ -0,0 +1,14 @@
+package com.example.reactivewings.service;
+
+import com.sendgrid.helpers.mail.Mail;
+
+import reactor.core.publisher.Mono;
+
+// Sends one SendGrid v3 mail/send request; emits the HTTP status, or a MailDeliveryException for error statuses
+public interface MailTransport extends AutoCloseable {
+    Mono<Integer> send(Mail mail);
+
+    // Releases the connections or threads the transport owns
+    @Override
+    void close();
+}
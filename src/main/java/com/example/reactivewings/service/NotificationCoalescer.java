@@ -0,0 +1,65 @@
+package com.example.reactivewings.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.example.reactivewings.model.FieldChange;
+import com.example.reactivewings.model.NotificationOutboxEntry;
+import com.example.reactivewings.utils.SubscriptionServiceUtils;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Turns one coalescing window's worth of outbox entries into one email. The windows themselves
+ * are kept in the {@link NotificationOutbox}, so every instance sees the same ones. Repeated changes
+ * to a field collapse into first old value and last new value, and changes that revert are dropped.
+ * A window holding one flight becomes a flight update; a digest window with several flights
+ * becomes a digest.
+ */
+@Service
+public class NotificationCoalescer {
+    private static final Logger log = LoggerFactory.getLogger(NotificationCoalescer.class);
+
+    private final EmailSenderService emailSenderService;
+
+    public NotificationCoalescer(EmailSenderService emailSenderService) {
+        this.emailSenderService = emailSenderService;
+    }
+
+    // Completes when the email carrying these entries' changes was delivered
+    public Mono<Void> send(List<NotificationOutboxEntry> entries) {
+        Map<Long, List<NotificationOutboxEntry>> byFlight = new LinkedHashMap<>();
+        entries.forEach(entry -> byFlight.computeIfAbsent(entry.getFlightId(), id -> new ArrayList<>()).add(entry));
+
+        Map<String, List<FieldChange>> changesByFlight = new LinkedHashMap<>();
+        NotificationOutboxEntry lastFlight = null;
+        for (List<NotificationOutboxEntry> updates : byFlight.values()) {
+            List<FieldChange> merged = SubscriptionServiceUtils.mergeChanges(updates.stream()
+                .sorted(Comparator.comparing(NotificationOutboxEntry::getCreatedAt, Comparator.nullsFirst(Comparator.naturalOrder())))
+                .map(NotificationOutboxEntry::getChanges)
+                .toList());
+            if (merged.isEmpty()) continue;
+            lastFlight = updates.get(0);
+            changesByFlight.put(lastFlight.getAirlineCode() + " " + lastFlight.getFlightNumber(), merged);
+        }
+
+        String email = entries.get(0).getEmail();
+        if (lastFlight == null) {
+            // Every change was reverted within the window, so there is nothing to tell
+            log.debug("Dropped {} updates to {} that cancelled out", entries.size(), email);
+            return Mono.empty();
+        }
+        if (changesByFlight.size() == 1) {
+            return emailSenderService.sendFlightUpdateEmailAsync(email, lastFlight.getAirlineCode(),
+                lastFlight.getFlightNumber(), changesByFlight.values().iterator().next());
+        }
+        return emailSenderService.sendFlightDigestEmailAsync(email, changesByFlight);
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.reactivewings.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.example.reactivewings.model.NotificationOutboxEntry;
+import com.example.reactivewings.model.NotificationOutboxEntry.Status;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Durable queue of flight update emails. The subscription matcher records entries before it saves
+ * the subscriptions, and inserts are keyed by subscription and revision, so a cycle replayed after
+ * a crash finds its entries already there.
+ *
+ * <p>The coalescing windows live in the outbox too. An entry becomes available at the end of its
+ * quiet window, and recording another entry for the same user and flight (or the same digest user)
+ * pushes the waiting entries of that group to the end of the new window, but never past
+ * {@code notifications.max-delay-ms} after they were created. Every instance drains the outbox: a
+ * due entry leases its whole group, which the {@link NotificationCoalescer} sends as one email,
+ * and the group is marked sent once its email was accepted. An entry whose lease expires is claimed
+ * again, so delivery is at least once.
+ */
+@Service
+public class NotificationOutbox {
+    private static final Logger log = LoggerFactory.getLogger(NotificationOutbox.class);
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final NotificationCoalescer coalescer;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Value("${outbox.batch-size:200}")
+    private int batchSize;
+
+    @Value("${outbox.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${outbox.delivery-concurrency:16}")
+    private int deliveryConcurrency;
+
+    // Must outlast a delivery including the dispatcher's retries, or held entries are claimed twice
+    @Value("${outbox.lease-ms:900000}")
+    private long leaseMs;
+
+    @Value("${outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${outbox.retry-backoff-ms:30000}")
+    private long retryBackoffMs;
+
+    @Value("${notifications.quiet-window-ms:120000}")
+    private long quietWindowMs;
+
+    @Value("${notifications.digest-window-ms:300000}")
+    private long digestWindowMs;
+
+    @Value("${notifications.max-delay-ms:600000}")
+    private long maxDelayMs;
+
+    public NotificationOutbox(ReactiveMongoTemplate mongoTemplate, NotificationCoalescer coalescer) {
+        this.mongoTemplate = mongoTemplate;
+        this.coalescer = coalescer;
+    }
+
+    // Only inserts: an entry that already exists, pending or sent, is left as it is, but its group's window is extended
+    public Mono<Void> record(List<NotificationOutboxEntry> entries) {
+        if (entries.isEmpty()) return Mono.empty();
+
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, Set<String>> groupsByWindow = new HashMap<>();
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, NotificationOutboxEntry.class);
+        entries.forEach(entry -> {
+            long windowMs = windowOf(entry);
+            entry.setAvailableAt(now.plus(Duration.ofMillis(Math.min(windowMs, maxDelayMs))));
+            groupsByWindow.computeIfAbsent(windowMs, window -> new HashSet<>()).add(groupOf(entry));
+
+            Document document = new Document();
+            mongoTemplate.getConverter().write(entry, document);
+            bulk.upsert(Query.query(Criteria.where("_id").is(entry.getId())), Update.fromDocument(new Document("$setOnInsert", document)));
+        });
+
+        return bulk.execute()
+            .thenMany(Flux.fromIterable(groupsByWindow.entrySet()))
+            .filter(window -> window.getKey() > 0)
+            .concatMap(window -> extendWindows(window.getValue(), now.plus(Duration.ofMillis(window.getKey()))))
+            .then();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        log.info("Draining the notification outbox as node {}", nodeId);
+        Flux.interval(Duration.ofMillis(pollIntervalMs))
+            .onBackpressureDrop()
+            .concatMap(tick -> drain()
+                .onErrorResume(error -> {
+                    log.error("Outbox drain failed: {}", error.getMessage());
+                    return Mono.empty();
+                }), 1)
+            .subscribe();
+    }
+
+    private long windowOf(NotificationOutboxEntry entry) {
+        return entry.isEmailDigest() ? digestWindowMs : quietWindowMs;
+    }
+
+    // Entries recorded before groups existed are grouped the same way
+    private static String groupOf(NotificationOutboxEntry entry) {
+        return Objects.requireNonNullElseGet(entry.getGroupKey(),
+            () -> NotificationOutboxEntry.groupKeyOf(entry.getUserId(), entry.getFlightId(), entry.isEmailDigest()));
+    }
+
+    /*
+     * Moves the waiting entries of these groups to the end of the new window, capped per entry at
+     * createdAt + max delay, so the oldest entry of a busy group still comes due and brings the
+     * group with it. Entries that are leased or backing off after a failure are left alone.
+     */
+    private Mono<Long> extendWindows(Set<String> groupKeys, LocalDateTime windowEnd) {
+        Document waiting = new Document("groupKey", new Document("$in", List.copyOf(groupKeys)))
+            .append("status", Status.PENDING.name())
+            .append("attempts", 0)
+            .append("leaseToken", new Document("$exists", false));
+        // The driver writes Date as is; LocalDateTime would need the converter's zone
+        Date end = Date.from(windowEnd.atZone(ZoneId.systemDefault()).toInstant());
+        List<Document> pipeline = List.of(new Document("$set", new Document("availableAt",
+            new Document("$min", List.of(end, new Document("$add", List.of("$createdAt", maxDelayMs)))))));
+
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(NotificationOutboxEntry.class))
+            .flatMap(outbox -> Mono.from(outbox.updateMany(waiting, pipeline)))
+            .map(result -> result.getModifiedCount());
+    }
+
+    // Keeps claiming while batches come back full, so a backlog doesn't wait for the next tick
+    private Mono<Void> drain() {
+        return drainBatch()
+            .expand(claimed -> claimed >= batchSize ? drainBatch() : Mono.empty())
+            .then();
+    }
+
+    // The next batch is only claimed once every group of this one was delivered or failed
+    private Mono<Integer> drainBatch() {
+        String leaseToken = UUID.randomUUID().toString();
+        return claim(leaseToken)
+            .collectMultimap(NotificationOutbox::groupOf)
+            .flatMap(groups -> Flux.fromIterable(groups.values())
+                .flatMap(group -> deliver(List.copyOf(group), leaseToken), deliveryConcurrency)
+                .then(Mono.fromCallable(() -> groups.values().stream().mapToInt(Collection::size).sum())));
+    }
+
+    /*
+     * Picks due entries, then leases them together with the rest of their groups in an update that
+     * re-checks availability, so when two nodes pick the same entries each goes to whichever update
+     * reaches it first. The batch is read back by its lease token.
+     */
+    private Flux<NotificationOutboxEntry> claim(String leaseToken) {
+        LocalDateTime now = LocalDateTime.now();
+        Query candidates = Query.query(due(now))
+            .with(Sort.by("availableAt"))
+            .limit(batchSize);
+        candidates.fields().include("_id", "groupKey");
+
+        Update lease = new Update()
+            .set("leaseToken", leaseToken)
+            .set("leaseOwner", nodeId)
+            .set("availableAt", now.plus(Duration.ofMillis(leaseMs)))
+            .inc("attempts", 1);
+
+        return mongoTemplate.find(candidates, NotificationOutboxEntry.class)
+            .collectList()
+            .filter(due -> !due.isEmpty())
+            .flatMap(due -> {
+                List<String> ids = due.stream().map(NotificationOutboxEntry::getId).toList();
+                List<String> groups = due.stream().map(NotificationOutboxEntry::getGroupKey).filter(Objects::nonNull).distinct().toList();
+                Criteria members = new Criteria().orOperator(Criteria.where("_id").in(ids), Criteria.where("groupKey").in(groups));
+                return mongoTemplate.updateMulti(Query.query(new Criteria().andOperator(members, claimable(now))), lease, NotificationOutboxEntry.class);
+            })
+            .flatMapMany(result -> mongoTemplate.find(
+                Query.query(Criteria.where("leaseToken").is(leaseToken)), NotificationOutboxEntry.class));
+    }
+
+    private static Criteria due(LocalDateTime now) {
+        return Criteria.where("status").is(Status.PENDING).and("availableAt").lte(now);
+    }
+
+    // A group member still inside its window comes along with the due entry; one leased by a live drainer does not
+    private static Criteria claimable(LocalDateTime now) {
+        return Criteria.where("status").is(Status.PENDING)
+            .orOperator(Criteria.where("availableAt").lte(now), Criteria.where("leaseToken").exists(false));
+    }
+
+    private Mono<Void> deliver(List<NotificationOutboxEntry> group, String leaseToken) {
+        return coalescer.send(group)
+            .then(Mono.defer(() -> markSent(group, leaseToken)))
+            .onErrorResume(error -> markFailed(group, leaseToken, error))
+            .onErrorResume(error -> {
+                log.error("Could not update outbox group {}: {}", groupOf(group.get(0)), error.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    private Mono<Void> markSent(List<NotificationOutboxEntry> group, String leaseToken) {
+        Update update = new Update()
+            .set("status", Status.SENT)
+            .set("sentAt", LocalDateTime.now())
+            .unset("leaseToken")
+            .unset("lastError");
+        return mongoTemplate.updateMulti(leased(group, leaseToken), update, NotificationOutboxEntry.class).then();
+    }
+
+    // Backs off exponentially from the most attempted entry; after the last attempt the group is parked as FAILED for inspection
+    private Mono<Void> markFailed(List<NotificationOutboxEntry> group, String leaseToken, Throwable error) {
+        int attempts = group.stream().mapToInt(NotificationOutboxEntry::getAttempts).max().orElse(1);
+        boolean exhausted = attempts >= maxAttempts;
+        long backoffMs = retryBackoffMs << Math.min(Math.max(attempts - 1, 0), 10);
+        log.warn("Outbox group {} of {} entries failed (attempt {}{}): {}", groupOf(group.get(0)), group.size(), attempts,
+            exhausted ? ", giving up" : "", error.getMessage());
+
+        Update update = new Update()
+            .set("status", exhausted ? Status.FAILED : Status.PENDING)
+            .set("availableAt", LocalDateTime.now().plus(Duration.ofMillis(backoffMs)))
+            .set("lastError", String.valueOf(error.getMessage()))
+            .unset("leaseToken");
+        return mongoTemplate.updateMulti(leased(group, leaseToken), update, NotificationOutboxEntry.class).then();
+    }
+
+    // A node whose lease expired and was taken over can no longer change the entries
+    private static Query leased(List<NotificationOutboxEntry> group, String leaseToken) {
+        List<String> ids = group.stream().map(NotificationOutboxEntry::getId).toList();
+        return Query.query(Criteria.where("_id").in(ids).and("leaseToken").is(leaseToken));
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.reactivewings.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.reactivewings.model.Subscription;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Retires subscriptions once their flight is long gone. Every subscription expires
+ * {@code subscriptions.retention-hours} after its scheduled time, or
+ * {@code subscriptions.undated-retention-days} after it was created when it has no scheduled time;
+ * the archiver copies expired ones
+ * to {@code subscription_history} in batches, then deletes them from the active collection and
+ * the index, so the matcher only ever works on upcoming flights. Copies are upserts and deletes
+ * are by id, so instances archiving at the same time don't conflict.
+ */
+@Service
+public class SubscriptionArchiver {
+    private static final Logger log = LoggerFactory.getLogger(SubscriptionArchiver.class);
+
+    private static final String HISTORY = "subscription_history";
+    private static final String ARCHIVE_LEASE = "subscription-archiver";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final SubscriptionIndex subscriptionIndex;
+    private final FlightReminderScheduler reminders;
+    private final ClusterCoordinator coordinator;
+    private final AtomicBoolean archiving = new AtomicBoolean();
+
+    @Value("${subscriptions.retention-hours:24}")
+    private long retentionHours;
+
+    @Value("${subscriptions.undated-retention-days:30}")
+    private long undatedRetentionDays;
+
+    @Value("${subscriptions.archive-batch-size:500}")
+    private int batchSize;
+
+    public SubscriptionArchiver(ReactiveMongoTemplate mongoTemplate,
+                                SubscriptionIndex subscriptionIndex,
+                                FlightReminderScheduler reminders,
+                                ClusterCoordinator coordinator) {
+        this.mongoTemplate = mongoTemplate;
+        this.subscriptionIndex = subscriptionIndex;
+        this.reminders = reminders;
+        this.coordinator = coordinator;
+    }
+
+    public LocalDateTime expiryOf(Subscription subscription) {
+        if (subscription.getScheduledTime() != null) {
+            return subscription.getScheduledTime().plus(Duration.ofHours(retentionHours));
+        }
+        LocalDateTime created = subscription.getCreatedAt() != null ? subscription.getCreatedAt() : LocalDateTime.now();
+        return created.plus(Duration.ofDays(undatedRetentionDays));
+    }
+
+    @Scheduled(fixedDelayString = "${subscriptions.archive-interval-ms:600000}", initialDelay = 60000)
+    public void archiveExpired() {
+        if (!archiving.compareAndSet(false, true)) return;
+
+        LocalDateTime now = LocalDateTime.now();
+        // One node archives at a time; the others skip while it holds the lease
+        coordinator.acquire(ARCHIVE_LEASE)
+            .flatMap(token -> archiveBatch(now)
+                .expand(archived -> archived == batchSize ? archiveBatch(now) : Mono.empty())
+                .reduce(0, Integer::sum))
+            .doFinally(signal -> archiving.set(false))
+            .subscribe(archived -> {
+                if (archived > 0) log.info("Archived {} expired subscriptions", archived);
+            }, error -> log.error("Subscription archiving failed: {}", error.getMessage()));
+    }
+
+    private Mono<Integer> archiveBatch(LocalDateTime now) {
+        Query expired = Query.query(Criteria.where("expiresAt").lte(now))
+            .with(Sort.by("expiresAt"))
+            .limit(batchSize);
+
+        return mongoTemplate.find(expired, Document.class, mongoTemplate.getCollectionName(Subscription.class))
+            .collectList()
+            .filter(batch -> !batch.isEmpty())
+            .flatMap(batch -> copyToHistory(batch, new Date())
+                .then(delete(batch.stream().map(subscription -> subscription.get("_id")).toList()))
+                .thenReturn(batch.size()))
+            .defaultIfEmpty(0);
+    }
+
+    // Raw documents are written by the driver as they are, so archivedAt is a Date rather than a zone-less LocalDateTime
+    private Mono<Void> copyToHistory(List<Document> batch, Date archivedAt) {
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, HISTORY);
+        batch.forEach(subscription -> bulk.replaceOne(
+            Query.query(Criteria.where("_id").is(subscription.get("_id"))),
+            new Document(subscription).append("archivedAt", archivedAt),
+            FindAndReplaceOptions.options().upsert()));
+        return bulk.execute().then();
+    }
+
+    private Mono<Void> delete(List<Object> ids) {
+        return mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), Subscription.class)
+            .doOnNext(result -> ids.forEach(id -> {
+                subscriptionIndex.remove(id.toString());
+                reminders.cancel(id.toString());
+            }))
+            .then();
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.reactivewings.service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import com.example.reactivewings.model.FlightKey;
+import com.example.reactivewings.model.Subscription;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+// Inverted index from flight key to the ids of the subscriptions on that flight
+@Component
+public class SubscriptionIndex {
+    private static final Logger log = LoggerFactory.getLogger(SubscriptionIndex.class);
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final Map<FlightKey, Set<String>> subscriptions = new ConcurrentHashMap<>();
+    private final Map<String, FlightKey> keysById = new ConcurrentHashMap<>();
+    private final Sinks.Empty<Void> ready = Sinks.empty();
+
+    public SubscriptionIndex(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        Query keys = new Query();
+        keys.fields().include("airlineCode", "flightNumber", "scheduledTime");
+
+        mongoTemplate.find(keys, Subscription.class)
+            .doOnNext(this::add)
+            .count()
+            .subscribe(count -> {
+                ready.tryEmitEmpty();
+                log.info("Subscription index built from {} subscriptions across {} flights", count, subscriptions.size());
+            }, error -> log.error("Failed to build subscription index: {}", error.getMessage()));
+    }
+
+    public Mono<Void> whenReady() {
+        return ready.asMono();
+    }
+
+    // The key of a subscription never changes, so adding one that is already indexed is a no-op
+    public void add(Subscription subscription) {
+        FlightKey key = subscription.key();
+        keysById.put(subscription.getId(), key);
+        subscriptions.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(subscription.getId());
+    }
+
+    public void remove(String subscriptionId) {
+        FlightKey key = keysById.remove(subscriptionId);
+        if (key == null) return;
+        subscriptions.computeIfPresent(key, (k, ids) -> {
+            ids.remove(subscriptionId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    public Set<String> subscriptionsOf(FlightKey key) {
+        return subscriptions.getOrDefault(key, Set.of());
+    }
+}
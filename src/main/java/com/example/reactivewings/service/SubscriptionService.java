@@ -1,105 +1,218 @@
 package com.example.reactivewings.service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import com.example.reactivewings.model.FieldChange;
 import com.example.reactivewings.model.Flight;
+import com.example.reactivewings.model.FlightChange;
+import com.example.reactivewings.model.FlightKey;
+import com.example.reactivewings.model.NotificationOutboxEntry;
+import com.example.reactivewings.model.Subscription;
 import com.example.reactivewings.model.User;
-import com.example.reactivewings.repo.UserRepository;
+import com.example.reactivewings.repo.SubscriptionRepository;
 import com.example.reactivewings.utils.SubscriptionServiceUtils;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 @Service
 public class SubscriptionService {
     private static final Logger log = LoggerFactory.getLogger(SubscriptionService.class);
 
-    private static UserRepository userRepository;
-    private static EmailSenderService emailSenderService;
+    private static SubscriptionRepository subscriptionRepository;
+    private static NotificationOutbox outbox;
     private static ReactiveMongoTemplate mongoTemplate;
+    private static SubscriptionIndex subscriptionIndex;
+    private static FlightChangeStreamConsumer flightChanges;
+    private static FlightReminderScheduler reminders;
+    private static ClusterCoordinator coordinator;
 
-    public SubscriptionService(UserRepository userRepository, 
-                                EmailSenderService emailSenderService,
-                                ReactiveMongoTemplate mongoTemplate) {
-        SubscriptionService.userRepository = userRepository;
-        SubscriptionService.emailSenderService = emailSenderService;
+    public SubscriptionService(SubscriptionRepository subscriptionRepository,
+                                NotificationOutbox outbox,
+                                ReactiveMongoTemplate mongoTemplate,
+                                SubscriptionIndex subscriptionIndex,
+                                FlightChangeStreamConsumer flightChanges,
+                                FlightReminderScheduler reminders,
+                                ClusterCoordinator coordinator) {
+        SubscriptionService.subscriptionRepository = subscriptionRepository;
+        SubscriptionService.outbox = outbox;
         SubscriptionService.mongoTemplate = mongoTemplate;
+        SubscriptionService.subscriptionIndex = subscriptionIndex;
+        SubscriptionService.flightChanges = flightChanges;
+        SubscriptionService.reminders = reminders;
+        SubscriptionService.coordinator = coordinator;
     }
 
-    private AtomicBoolean checkInProgress = new AtomicBoolean(false);
+    private final Sinks.Many<Boolean> rematches = Sinks.many().multicast().directBestEffort();
 
-    @Scheduled(fixedDelay = 10000)
-    public void checkSubscriptions() {
-        if (!checkInProgress.compareAndSet(false, true)) {
-            log.debug("Subscription check already running, skipping");
-            return;
-        }
+    @Value("${subscriptions.change-batch-size:256}")
+    private int changeBatchSize;
 
-        log.info("Checking subscriptions...");
+    @Value("${subscriptions.change-batch-window-ms:500}")
+    private long changeBatchWindowMs;
 
-        userRepository.findAll()
-            .flatMap(this::processUserSubscriptions)
-            .doOnError(error -> log.error("Error in subscription check: {}", error.getMessage()))
-            .doFinally(signal -> {
-                checkInProgress.set(false);
-                log.info("Subscription check completed");
-            })
+    /*
+     * Joins the whole board once to catch changes made while the app was down, then follows flight
+     * changes, acknowledging each batch only once it is matched. When subscriptions are partitioned,
+     * this node matches only the users it owns on the cluster ring. The board is joined again
+     * whenever the ring changes, to catch up on users taken over and on changes a departed node
+     * claimed but never matched, and whenever changes may have been missed: the change stream
+     * reported a gap or a batch failed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        subscriptionIndex.whenReady()
+            .then(flightChanges.partitioned())
+            .then(coordinator.whenJoined())
+            .then(matchFlights(mongoTemplate.findAll(Flight.class))
+                .onErrorResume(error -> {
+                    log.error("Initial subscription check failed: {}", error.getMessage());
+                    return Mono.empty();
+                }))
+            .thenMany(flightChanges.changes()
+                .filter(change -> change.type() != FlightChange.Type.REMOVED)
+                .bufferTimeout(changeBatchSize, Duration.ofMillis(changeBatchWindowMs), true)
+                .concatMap(changes -> matchFlights(Flux.fromIterable(changes).map(FlightChange::flight))
+                    .then(Mono.defer(() -> flightChanges.acknowledge(changes)))
+                    .onErrorResume(error -> {
+                        log.error("Error in subscription check, matching the whole board: {}", error.getMessage());
+                        rematches.tryEmitNext(true);
+                        return Mono.empty();
+                    })))
+            .subscribe(null, error -> log.error("Subscription matcher stopped: {}", error.getMessage()));
+
+        Flux.merge(coordinator.rebalances().map(ring -> true), flightChanges.gaps(), rematches.asFlux())
+            .onBackpressureLatest()
+            .concatMap(reason -> matchFlights(mongoTemplate.findAll(Flight.class))
+                .onErrorResume(error -> {
+                    log.error("Subscription check of the whole board failed: {}", error.getMessage());
+                    return Mono.empty();
+                }), 1)
             .subscribe();
     }
 
-    private Mono<Void> processUserSubscriptions(User user) {
-        return Flux.fromIterable(user.getSubscriptions())
-            .concatMap(sub -> findMatchingFlight(sub)
-                .map(flight -> applyChanges(flight, sub, user))
-                .defaultIfEmpty(false)
-            )
-            .reduce(false, Boolean::logicalOr)
-            .flatMap(changed -> changed ? userRepository.save(user).then() : Mono.empty());
+    // Batches are processed one after another; other writers are protected by the revision guard on each update
+    private Mono<Void> matchFlights(Flux<Flight> flights) {
+        return flights
+            .flatMapIterable(flight -> subscriptionIndex.subscriptionsOf(FlightKey.of(flight)).stream()
+                .filter(subscriptionId -> coordinator.owns(Subscription.userIdOf(subscriptionId)))
+                .map(subscriptionId -> Tuples.of(subscriptionId, flight))
+                .toList())
+            .collectMultimap(Tuple2::getT1, Tuple2::getT2)
+            .filter(affected -> !affected.isEmpty())
+            .flatMap(affected -> {
+                log.info("Checking {} subscriptions", affected.size());
+                return subscriptionRepository.findAllById(affected.keySet())
+                    .collectList()
+                    .flatMap(subscriptions -> processSubscriptions(subscriptions, affected));
+            });
+    }
+
+    private Mono<Void> processSubscriptions(List<Subscription> subscriptions, Map<String, Collection<Flight>> candidates) {
+        List<Notification> notifications = new ArrayList<>();
+        subscriptions.forEach(sub -> findMatchingFlight(sub, candidates.get(sub.getId()))
+            .ifPresent(flight -> {
+                List<FieldChange> changes = applyChanges(flight, sub);
+                if (!changes.isEmpty()) notifications.add(new Notification(sub, flight, changes));
+            }));
+        if (notifications.isEmpty()) return Mono.empty();
+
+        Set<String> userIds = notifications.stream().map(n -> n.subscription().getUserId()).collect(Collectors.toSet());
+        Query recipients = Query.query(Criteria.where("_id").in(userIds));
+        recipients.fields().include("email", "emailDigest");
+
+        // The outbox is written before the subscriptions: if their update is lost, the next cycle rebuilds the same keys and nothing is sent twice
+        return mongoTemplate.find(recipients, User.class)
+            .collectMap(User::getId)
+            .map(users -> notifications.stream()
+                .map(n -> NotificationOutboxEntry.flightUpdate(
+                    users.getOrDefault(n.subscription().getUserId(), new User(n.subscription().getUserId())),
+                    n.subscription(), n.flight(), n.changes()))
+                .toList())
+            .flatMap(entries -> outbox.record(entries))
+            .then(Mono.defer(() -> saveNotifiedState(notifications)))
+            // A moved estimate moves the flight's reminders
+            .doOnSuccess(done -> notifications.forEach(n -> reminders.schedule(n.subscription())));
+    }
+
+    // Only the notified fields are $set, and only if no one else moved the revision on since it was read; subscriptions from before revisions have none
+    private Mono<Void> saveNotifiedState(List<Notification> notifications) {
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Subscription.class);
+        notifications.forEach(n -> {
+            Subscription sub = n.subscription();
+            bulk.updateOne(
+                Query.query(Criteria.where("_id").is(sub.getId()).and("revision")
+                    .in(sub.getRevision() == 0 ? new Object[] { 0L, null } : new Object[] { sub.getRevision() })),
+                new Update()
+                    .set("estimatedTime", sub.getEstimatedTime())
+                    .set("terminal", sub.getTerminal())
+                    .set("counters", sub.getCounters())
+                    .set("checkinZone", sub.getCheckinZone())
+                    .set("statusHe", sub.getStatusHe())
+                    .set("contentHash", n.flight().getContentHash())
+                    .set("lastUpdated", sub.getLastUpdated())
+                    .inc("revision", 1));
+        });
+        return bulk.execute()
+            .doOnNext(result -> {
+                if (result.getModifiedCount() < notifications.size()) {
+                    log.debug("{} subscriptions were updated concurrently", notifications.size() - result.getModifiedCount());
+                }
+            })
+            .then();
     }
-    
-    private Mono<Flight> findMatchingFlight(Flight sub) {
-        Query q = new Query();
-        if (sub.getAirlineCode() != null) q.addCriteria(Criteria.where("airlineCode").is(sub.getAirlineCode()));
-        if (sub.getFlightNumber() != null) q.addCriteria(Criteria.where("flightNumber").is(sub.getFlightNumber()));
-        if (sub.getScheduledTime() != null) q.addCriteria(Criteria.where("scheduledTime").is(sub.getScheduledTime()));
-        if (sub.getAirportCode() != null) q.addCriteria(Criteria.where("airportCode").is(sub.getAirportCode()));
-        if (sub.getAirlineName() != null) q.addCriteria(Criteria.where("airlineName").is(sub.getAirlineName()));
-        q.with(Sort.by(Sort.Direction.DESC, "lastUpdated"));
-        q.limit(1);
-        return mongoTemplate.findOne(q, Flight.class);
+
+    private Optional<Flight> findMatchingFlight(Subscription sub, Collection<Flight> candidates) {
+        if (candidates == null) return Optional.empty();
+        FlightKey key = sub.key();
+        return candidates.stream()
+            .filter(flight -> key.equals(FlightKey.of(flight)))
+            .filter(flight -> sub.getAirportCode() == null || sub.getAirportCode().equals(flight.getAirportCode()))
+            .filter(flight -> sub.getAirlineName() == null || sub.getAirlineName().equals(flight.getAirlineName()))
+            .max(Comparator.comparing(Flight::getLastUpdated, Comparator.nullsFirst(Comparator.naturalOrder())));
     }
 
-    private boolean applyChanges(Flight matchingFlight, Flight sub, User user) {
-        StringBuilder changeLog = new StringBuilder();
+    // The scheduled time is part of the flight key, so a matched flight always agrees on it
+    private List<FieldChange> applyChanges(Flight matchingFlight, Subscription sub) {
+        List<FieldChange> changes = new ArrayList<>();
 
-        boolean hasChanges = SubscriptionServiceUtils.updateField("זמן מתוכנן", sub::getScheduledTime, matchingFlight::getScheduledTime, sub::setScheduledTime, changeLog) |
-        SubscriptionServiceUtils.updateField("זמן משוער", sub::getEstimatedTime, matchingFlight::getEstimatedTime, sub::setEstimatedTime, changeLog) |
-        SubscriptionServiceUtils.updateField("טרמינל", () -> String.valueOf(sub.getTerminal()), () -> String.valueOf(matchingFlight.getTerminal()), t -> sub.setTerminal(matchingFlight.getTerminal()), changeLog) |
-        SubscriptionServiceUtils.updateField("דלפקים", sub::getCounters, matchingFlight::getCounters, sub::setCounters, changeLog) |
-        SubscriptionServiceUtils.updateField("אזור צ'ק-אין", sub::getCheckinZone, matchingFlight::getCheckinZone, sub::setCheckinZone, changeLog) |
-        SubscriptionServiceUtils.updateField("סטטוס", sub::getStatusHe, matchingFlight::getStatusHe, sub::setStatusHe, changeLog);
+        boolean hasChanges = SubscriptionServiceUtils.updateField("זמן משוער", sub::getEstimatedTime, matchingFlight::getEstimatedTime, sub::setEstimatedTime, changes) |
+        SubscriptionServiceUtils.updateField("טרמינל", () -> String.valueOf(sub.getTerminal()), () -> String.valueOf(matchingFlight.getTerminal()), t -> sub.setTerminal(matchingFlight.getTerminal()), changes) |
+        SubscriptionServiceUtils.updateField("דלפקים", sub::getCounters, matchingFlight::getCounters, sub::setCounters, changes) |
+        SubscriptionServiceUtils.updateField("אזור צ'ק-אין", sub::getCheckinZone, matchingFlight::getCheckinZone, sub::setCheckinZone, changes) |
+        SubscriptionServiceUtils.updateField("סטטוס", sub::getStatusHe, matchingFlight::getStatusHe, sub::setStatusHe, changes);
 
         if (hasChanges) {
             sub.setLastUpdated(LocalDateTime.now());
-            if (emailSenderService != null) {
-                emailSenderService.sendFlightUpdateEmailAsync(
-                    user.getEmail(), 
-                    sub.getAirlineCode(),
-                    sub.getFlightNumber(), 
-                    changeLog.toString()
-                ).subscribe(null, err -> {}, () -> {});
-            }
         }
-        
-        return hasChanges;
+
+        return changes;
     }
+
+    private record Notification(Subscription subscription, Flight flight, List<FieldChange> changes) {}
 }
@@ -0,0 +1,28 @@
+package com.example.reactivewings.service;
+
+import java.time.Duration;
+
+// Token bucket pacing: callers reserve a token and wait for the returned delay, so reservations never fail
+public class TokenBucket {
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double tokensPerSecond, int burst) {
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.capacity = Math.max(burst, 1);
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public synchronized Duration reserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+
+        tokens -= 1;
+        if (tokens >= 0) return Duration.ZERO;
+        return Duration.ofNanos((long) Math.ceil(-tokens / tokensPerNano));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.reactivewings.service;
+
+import java.time.Duration;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.sendgrid.helpers.mail.Mail;
+
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+// Non-blocking SendGrid client: requests share a pool of keep-alive connections, negotiated as HTTP/2 over TLS
+public class WebClientMailTransport implements MailTransport {
+    private static final String SEND_PATH = "/v3/mail/send";
+
+    private final ConnectionProvider pool;
+    private final WebClient webClient;
+
+    public WebClientMailTransport(WebClient.Builder webClientBuilder, String baseUrl, String apiKey, int maxConnections) {
+        this.pool = ConnectionProvider.builder("sendgrid")
+            .maxConnections(maxConnections)
+            .pendingAcquireMaxCount(-1)
+            .maxIdleTime(Duration.ofSeconds(60))
+            .build();
+
+        HttpClient httpClient = HttpClient.create(pool)
+            .responseTimeout(Duration.ofSeconds(30));
+        httpClient = baseUrl.startsWith("https")
+            ? httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure()
+            : httpClient.protocol(HttpProtocol.HTTP11);
+
+        this.webClient = webClientBuilder.clone()
+            .baseUrl(baseUrl)
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+            .build();
+    }
+
+    @Override
+    public Mono<Integer> send(Mail mail) {
+        return Mono.fromCallable(mail::build)
+            .flatMap(body -> webClient.post()
+                .uri(SEND_PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchangeToMono(response -> {
+                    int status = response.statusCode().value();
+                    if (response.statusCode().isError()) {
+                        return response.bodyToMono(String.class)
+                            .defaultIfEmpty("")
+                            .flatMap(error -> Mono.error(new MailDeliveryException(status, error)));
+                    }
+                    return response.releaseBody().thenReturn(status);
+                }));
+    }
+
+    @Override
+    public void close() {
+        pool.dispose();
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.reactivewings.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Incremental parser for a CKAN {@code datastore_search} response.
+ * Bytes are fed chunk by chunk and every element of {@code result.records} is
+ * bound to {@code type} as soon as its closing brace arrives, so only one
+ * record is ever held as tokens at a time. Not thread-safe; use one instance per response.
+ */
+public class CkanRecordParser<T> {
+    private final ObjectMapper objectMapper;
+    private final Class<T> type;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private TokenBuffer record;
+    private int recordDepth;
+
+    public CkanRecordParser(ObjectMapper objectMapper, Class<T> type) {
+        this.objectMapper = objectMapper;
+        this.type = type;
+        try {
+            this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    public List<T> feed(byte[] bytes) {
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            return drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public List<T> endOfInput() {
+        feeder.endOfInput();
+        try {
+            return drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<T> drain() throws IOException {
+        List<T> completed = new ArrayList<>();
+        JsonToken token;
+
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (record == null) {
+                if (token == JsonToken.START_OBJECT && isRecordsElement(parser.getParsingContext())) {
+                    record = new TokenBuffer(parser);
+                    recordDepth = 0;
+                } else {
+                    continue;
+                }
+            }
+
+            record.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                recordDepth++;
+            } else if (token.isStructEnd() && --recordDepth == 0) {
+                completed.add(objectMapper.readValue(record.asParser(objectMapper), type));
+                record = null;
+            }
+        }
+
+        return completed;
+    }
+
+    // True when the object just opened is a direct child of the top-level "result.records" array
+    private static boolean isRecordsElement(JsonStreamContext objectContext) {
+        JsonStreamContext array = objectContext.getParent();
+        if (array == null || !array.inArray()) return false;
+
+        JsonStreamContext result = array.getParent();
+        if (result == null || !result.inObject() || !"records".equals(result.getCurrentName())) return false;
+
+        JsonStreamContext root = result.getParent();
+        return root != null && root.inObject() && "result".equals(root.getCurrentName())
+            && root.getParent() != null && root.getParent().inRoot();
+    }
+}
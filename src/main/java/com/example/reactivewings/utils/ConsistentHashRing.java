@@ -0,0 +1,68 @@
+package com.example.reactivewings.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable consistent hash ring. Every node is placed at {@code virtualNodes} points, and a key
+ * belongs to the first point at or after its hash. Adding or removing a node only moves the keys
+ * of that node's points, and the points are hashed from the node id alone, so every instance that
+ * sees the same members computes the same owners.
+ */
+public final class ConsistentHashRing {
+    public static final ConsistentHashRing EMPTY = new ConsistentHashRing(List.of(), 1);
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final String[] owners;
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        this.nodes = nodes.stream().distinct().sorted().toList();
+
+        long[][] placed = new long[this.nodes.size() * virtualNodes][];
+        int n = 0;
+        for (int node = 0; node < this.nodes.size(); node++) {
+            for (int replica = 0; replica < virtualNodes; replica++) {
+                placed[n++] = new long[] { hash(this.nodes.get(node) + "#" + replica), node };
+            }
+        }
+        // Ties are broken by node, so the order doesn't depend on how the members were listed
+        Arrays.sort(placed, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        this.points = new long[placed.length];
+        this.owners = new String[placed.length];
+        for (int i = 0; i < placed.length; i++) {
+            points[i] = placed[i][0];
+            owners[i] = this.nodes.get((int) placed[i][1]);
+        }
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    public String ownerOf(String key) {
+        if (points.length == 0) return null;
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) index = -index - 1;
+        return owners[index == points.length ? 0 : index];
+    }
+
+    // FNV-1a over the UTF-8 bytes, finished with the SplitMix64 mixer so similar ids spread out
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
@@ -1,10 +1,18 @@
 package com.example.reactivewings.utils;
 
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+import com.example.reactivewings.model.FieldChange;
+import com.example.reactivewings.model.FlightReminder;
+import com.example.reactivewings.model.Subscription;
+
+// Templates are compiled once; every value is escaped, nested markup is passed as HtmlTemplate fragments
 public class EmailTemplates
 {
-    public static String flightUpdateHtml(String airlineCode, String flightNumber, String changes)
-    {
-        return """
+    private static final HtmlTemplate FLIGHT_UPDATE = HtmlTemplate.compile("""
             <html dir="rtl">
             <head>
                 <meta charset="UTF-8">
@@ -21,9 +29,9 @@ public class EmailTemplates
                 <div class="container" dir="rtl">
                 <h2>התראת עדכון טיסה ✈️</h2>
                 <p>שלום,</p>
-                <p>עודכנה טיסתך <b>%s %s</b> עם השינויים הבאים:</p>
+                <p>עודכנה טיסתך <b>{{airlineCode}} {{flightNumber}}</b> עם השינויים הבאים:</p>
                 <div class="changes">
-                    <p>%s</p>
+                    <p>{{changes}}</p>
                 </div>
                 <p>נא לבדוק את פרטי הטיסה ולהגיע לשדה התעופה בהתאם.</p>
                 <p>בברכה,<br/>reactivewings - מערכת התראות טיסות</p>
@@ -33,43 +41,47 @@ public class EmailTemplates
                 </div>
             </body>
             </html>
-            """.formatted(airlineCode, flightNumber, changes.replace("\n", "<br/>"));
-    }
+            """, "airlineCode", "flightNumber", "changes");
 
-    public static String genericHtml(String subject, String bodyContent)
-    {
-        return """
+    private static final HtmlTemplate FLIGHT_DIGEST = HtmlTemplate.compile("""
             <html dir="rtl">
             <head>
                 <meta charset="UTF-8">
                 <style>
                 body { font-family: Arial, sans-serif; background-color: #f9f9f9; margin: 0; padding: 20px; direction: rtl; text-align: right; }
                 .container { max-width: 600px; margin: auto; background: #ffffff; padding: 20px; border-radius: 8px; box-shadow: 0 2px 6px rgba(0,0,0,0.15); direction: rtl; text-align: right; }
-                h2 { color: #2c3e50; text-align: right; }
+                h2, h3 { color: #2c3e50; text-align: right; }
                 p { font-size: 14px; color: #333333; line-height: 1.5; text-align: right; }
+                .changes { background: #f4f6f9; padding: 10px; border-right: 4px solid #3498db; margin: 15px 0; text-align: right; }
                 .footer { font-size: 12px; color: #777777; margin-top: 20px; border-top: 1px solid #eeeeee; padding-top: 10px; text-align: right; }
                 </style>
             </head>
             <body dir="rtl">
                 <div class="container" dir="rtl">
-                <h2>%s</h2>
-                <div>
-                    %s
-                </div>
+                <h2>סיכום עדכוני טיסות ✈️</h2>
+                <p>שלום,</p>
+                <p>עודכנו הטיסות הבאות:</p>
+                {{sections}}
+                <p>נא לבדוק את פרטי הטיסות ולהגיע לשדה התעופה בהתאם.</p>
+                <p>בברכה,<br/>reactivewings - מערכת התראות טיסות</p>
                 <div class="footer">
-                    <p>reactivewings - מערכת התראות טיסות</p>
+                    <p>זוהי הודעה אוטומטית. נא לא להשיב.</p>
                 </div>
                 </div>
             </body>
             </html>
-            """.formatted(subject, bodyContent);
-    }
+            """, "sections");
 
-    public static String subscriptionConfirmationHtml(String airlineCode,
-                                                    String flightNumber,
-                                                    String direction,
-                                                    String cityHe) {
-        return """
+    private static final HtmlTemplate DIGEST_SECTION = HtmlTemplate.compile("""
+                <h3>{{flight}}</h3>
+                <div class="changes">
+                    <p>{{changes}}</p>
+                </div>
+        """, "flight", "changes");
+
+    private static final HtmlTemplate CHANGE = HtmlTemplate.compile("{{field}}: {{from}} \u2192 {{to}}<br>", "field", "from", "to");
+
+    private static final HtmlTemplate SUBSCRIPTION_CONFIRMATION = HtmlTemplate.compile("""
             <html dir="rtl">
             <head>
                 <meta charset="UTF-8">
@@ -85,7 +97,7 @@ public class EmailTemplates
                 <div class="container" dir="rtl">
                 <h2>המנוי אושר ✅</h2>
                 <p>שלום,</p>
-                <p>נרשמת בהצלחה לקבלת עדכונים על טיסה <b>%s %s %s%s.</b></p>
+                <p>נרשמת בהצלחה לקבלת עדכונים על טיסה <b>{{airlineCode}} {{flightNumber}} {{direction}}{{city}}.</b></p>
                 <p>נודיע לך כאשר יהיו עדכונים.</p>
                 <p>בברכה,<br/>reactivewings - מערכת התראות טיסות</p>
                 <div class="footer">
@@ -94,6 +106,121 @@ public class EmailTemplates
                 </div>
             </body>
             </html>
-            """.formatted(airlineCode, flightNumber, direction, cityHe);
+            """, "airlineCode", "flightNumber", "direction", "city");
+
+    private static final HtmlTemplate SUBSCRIPTIONS_CONFIRMATION = HtmlTemplate.compile("""
+            <html dir="rtl">
+            <head>
+                <meta charset="UTF-8">
+                <style>
+                body { font-family: Arial, sans-serif; direction: rtl; text-align: right; }
+                .container { max-width: 600px; margin: auto; padding: 20px; direction: rtl; text-align: right; }
+                h2 { text-align: right; }
+                p, li { text-align: right; }
+                .footer { font-size: 12px; color: #777777; margin-top: 20px; border-top: 1px solid #eeeeee; padding-top: 10px; text-align: right; }
+                </style>
+            </head>
+            <body dir="rtl">
+                <div class="container" dir="rtl">
+                <h2>המנויים אושרו ✅</h2>
+                <p>שלום,</p>
+                <p>נרשמת בהצלחה לקבלת עדכונים על הטיסות הבאות:</p>
+                <ul>{{flights}}</ul>
+                <p>נודיע לך כאשר יהיו עדכונים.</p>
+                <p>בברכה,<br/>reactivewings - מערכת התראות טיסות</p>
+                <div class="footer">
+                    <p>זוהי הודעה אוטומטית. נא לא להשיב.</p>
+                </div>
+                </div>
+            </body>
+            </html>
+            """, "flights");
+
+    private static final HtmlTemplate SUBSCRIBED_FLIGHT = HtmlTemplate.compile(
+        "<li><b>{{airlineCode}} {{flightNumber}}</b> {{direction}}{{city}} · {{time}}</li>",
+        "airlineCode", "flightNumber", "direction", "city", "time");
+
+    private static final HtmlTemplate FLIGHT_REMINDER = HtmlTemplate.compile("""
+            <html dir="rtl">
+            <head>
+                <meta charset="UTF-8">
+                <style>
+                body { font-family: Arial, sans-serif; background-color: #f9f9f9; margin: 0; padding: 20px; direction: rtl; text-align: right; }
+                .container { max-width: 600px; margin: auto; background: #ffffff; padding: 20px; border-radius: 8px; box-shadow: 0 2px 6px rgba(0,0,0,0.15); direction: rtl; text-align: right; }
+                h2 { color: #2c3e50; text-align: right; }
+                p { font-size: 14px; color: #333333; line-height: 1.5; text-align: right; }
+                .footer { font-size: 12px; color: #777777; margin-top: 20px; border-top: 1px solid #eeeeee; padding-top: 10px; text-align: right; }
+                </style>
+            </head>
+            <body dir="rtl">
+                <div class="container" dir="rtl">
+                <h2>{{title}} ⏰</h2>
+                <p>שלום,</p>
+                <p>{{message}}</p>
+                <p>טיסה <b>{{airlineCode}} {{flightNumber}}</b> ל{{city}}, מועד המראה: <b>{{departure}}</b>.</p>
+                <p>בברכה,<br/>reactivewings - מערכת התראות טיסות</p>
+                <div class="footer">
+                    <p>זוהי הודעה אוטומטית. נא לא להשיב.</p>
+                </div>
+                </div>
+            </body>
+            </html>
+            """, "title", "message", "airlineCode", "flightNumber", "city", "departure");
+
+    private static final DateTimeFormatter FLIGHT_TIME = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+    public static String flightUpdateHtml(String airlineCode, String flightNumber, List<FieldChange> changes)
+    {
+        return FLIGHT_UPDATE.render(airlineCode, flightNumber, changesHtml(changes));
+    }
+
+    // changesByFlight maps "airline number" to that flight's changes
+    public static String flightDigestHtml(Map<String, List<FieldChange>> changesByFlight)
+    {
+        HtmlTemplate.Fragment sections = out -> changesByFlight.forEach((flight, changes) ->
+            DIGEST_SECTION.appendTo(out, flight, changesHtml(changes)));
+        return FLIGHT_DIGEST.render(sections);
+    }
+
+    public static String subscriptionConfirmationHtml(String airlineCode,
+                                                    String flightNumber,
+                                                    String direction,
+                                                    String cityHe) {
+        return SUBSCRIPTION_CONFIRMATION.render(airlineCode, flightNumber, direction, cityHe);
+    }
+
+    public static String subscriptionsConfirmationHtml(List<Subscription> subscriptions) {
+        HtmlTemplate.Fragment flights = out -> subscriptions.forEach(subscription -> SUBSCRIBED_FLIGHT.appendTo(out,
+            subscription.getAirlineCode(),
+            subscription.getFlightNumber(),
+            "D".equals(subscription.getDirection()) ? "ל" : "מ",
+            subscription.getCityHe(),
+            subscription.getScheduledTime() == null ? "" : FLIGHT_TIME.format(subscription.getScheduledTime())));
+        return SUBSCRIPTIONS_CONFIRMATION.render(flights);
+    }
+
+    public static String reminderTitle(FlightReminder.Kind kind) {
+        return switch (kind) {
+            case CHECKIN_OPENS -> "הצ'ק-אין נפתח";
+            case DEPARTURE_SOON -> "ההמראה מתקרבת";
+            case GATE_CLOSING -> "השער נסגר בקרוב";
+        };
+    }
+
+    public static String flightReminderHtml(FlightReminder.Kind kind,
+                                            String airlineCode,
+                                            String flightNumber,
+                                            String cityHe,
+                                            LocalDateTime departure) {
+        String message = switch (kind) {
+            case CHECKIN_OPENS -> "הצ'ק-אין לטיסתך נפתח. מומלץ להגיע לשדה התעופה בהקדם.";
+            case DEPARTURE_SOON -> "טיסתך ממריאה בעוד כמה שעות. זה הזמן לצאת לשדה התעופה.";
+            case GATE_CLOSING -> "השער לטיסתך ייסגר בקרוב. נא לגשת לשער העלייה למטוס.";
+        };
+        return FLIGHT_REMINDER.render(reminderTitle(kind), message, airlineCode, flightNumber, cityHe, FLIGHT_TIME.format(departure));
+    }
+
+    private static HtmlTemplate.Fragment changesHtml(List<FieldChange> changes) {
+        return out -> changes.forEach(change -> CHANGE.appendTo(out, change.field(), change.from(), change.to()));
     }
 }
@@ -0,0 +1,91 @@
+package com.example.reactivewings.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Objects;
+import java.util.function.Function;
+
+import com.example.reactivewings.model.Flight;
+
+public class FlightSyncUtils {
+    // Fields that come from the upstream feed; bookkeeping fields (id, contentHash, lastUpdated) are excluded
+    public static final Map<String, Function<Flight, Object>> CONTENT_FIELDS = new LinkedHashMap<>();
+
+    static {
+        CONTENT_FIELDS.put("flightId", Flight::getFlightId);
+        CONTENT_FIELDS.put("airlineCode", Flight::getAirlineCode);
+        CONTENT_FIELDS.put("flightNumber", Flight::getFlightNumber);
+        CONTENT_FIELDS.put("airlineName", Flight::getAirlineName);
+        CONTENT_FIELDS.put("scheduledTime", Flight::getScheduledTime);
+        CONTENT_FIELDS.put("estimatedTime", Flight::getEstimatedTime);
+        CONTENT_FIELDS.put("direction", Flight::getDirection);
+        CONTENT_FIELDS.put("airportCode", Flight::getAirportCode);
+        CONTENT_FIELDS.put("cityEn", Flight::getCityEn);
+        CONTENT_FIELDS.put("cityHe", Flight::getCityHe);
+        CONTENT_FIELDS.put("cityName", Flight::getCityName);
+        CONTENT_FIELDS.put("countryEn", Flight::getCountryEn);
+        CONTENT_FIELDS.put("countryHe", Flight::getCountryHe);
+        CONTENT_FIELDS.put("terminal", Flight::getTerminal);
+        CONTENT_FIELDS.put("counters", Flight::getCounters);
+        CONTENT_FIELDS.put("checkinZone", Flight::getCheckinZone);
+        CONTENT_FIELDS.put("statusEn", Flight::getStatusEn);
+        CONTENT_FIELDS.put("statusHe", Flight::getStatusHe);
+    }
+
+    public static String contentHash(Flight flight) {
+        MessageDigest digest = sha256();
+        for (Function<Flight, Object> getter : CONTENT_FIELDS.values()) {
+            digest.update(Objects.toString(canonical(getter.apply(flight)), "\u0000").getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0x1f);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static String boardDigest(List<Flight> flights) {
+        MessageDigest digest = sha256();
+        for (Flight flight : flights) {
+            digest.update(Objects.toString(flight.getFlightId(), "\u0000").getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0x1f);
+            digest.update(Objects.toString(flight.getContentHash(), "\u0000").getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0x1f);
+            digest.update(Objects.toString(flight.getLastUpdated(), "\u0000").getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0x1e);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static Set<String> changedFields(Flight previous, Flight current) {
+        Set<String> changed = new LinkedHashSet<>();
+        CONTENT_FIELDS.forEach((name, getter) -> {
+            if (!Objects.equals(getter.apply(previous), getter.apply(current))) changed.add(name);
+        });
+        return changed;
+    }
+
+    // Best estimate of when the flight actually moves: the estimate if published, otherwise the schedule
+    public static LocalDateTime movementTime(Flight flight) {
+        return flight.getEstimatedTime() != null ? flight.getEstimatedTime() : flight.getScheduledTime();
+    }
+
+    // Times hash in the feed's own ISO form, so hashes written while they were stored as strings stay valid
+    private static Object canonical(Object value) {
+        return value instanceof LocalDateTime time ? DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(time) : value;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
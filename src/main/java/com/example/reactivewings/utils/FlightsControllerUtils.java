@@ -1,17 +1,164 @@
 package com.example.reactivewings.utils;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.example.reactivewings.model.Flight;
+import com.example.reactivewings.model.FlightCursor;
+import com.example.reactivewings.model.FlightSearchCriteria;
 
 public class FlightsControllerUtils {
     public static final int MAX_PAGE_SIZE = 500;
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final Sort KEYSET_SORT = Sort.by(Sort.Direction.DESC, "lastUpdated", "scheduledTime", "flightId");
+
+    // Fields a client can select with fields=, in output order
+    private static final Map<String, Function<Flight, Object>> SELECTABLE_FIELDS = new LinkedHashMap<>(FlightSyncUtils.CONTENT_FIELDS);
+
+    static {
+        SELECTABLE_FIELDS.put("lastUpdated", Flight::getLastUpdated);
+    }
+
+    public static final Map<String, List<String>> FIELD_PRESETS = Map.of(
+        "board", List.of("flightId", "airlineCode", "flightNumber", "airlineName", "scheduledTime", "estimatedTime",
+            "direction", "cityEn", "terminal", "statusEn"),
+        "detail", List.copyOf(SELECTABLE_FIELDS.keySet()));
+
+    public static int limit(int size) {
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    public static int skip(int page, int size) {
+        return Math.max(page, 0) * limit(size);
+    }
 
     public static Query buildSearchQuery(int page, int size) {
-        int limit = Math.min(size, MAX_PAGE_SIZE);
-        int skip = Math.max(page, 0) * limit;
         return new Query()
-            .skip(skip)
-            .limit(limit)
+            .skip(skip(page, size))
+            .limit(limit(size))
             .with(Sort.by(Sort.Direction.DESC, "lastUpdated"));
     }
+
+    public static Query buildSearchQuery(FlightSearchCriteria criteria, int page, int size) {
+        return addFilters(buildSearchQuery(page, size), criteria);
+    }
+
+    // Streaming consumers aren't capped: size 0 (the default) streams every match
+    public static int streamSkip(int page, int size) {
+        return size > 0 ? Math.max(page, 0) * size : 0;
+    }
+
+    public static int streamLimit(int size) {
+        return Math.max(size, 0);
+    }
+
+    public static Query buildStreamQuery(FlightSearchCriteria criteria, int page, int size) {
+        Query query = new Query()
+            .skip(streamSkip(page, size))
+            .limit(streamLimit(size))
+            .with(Sort.by(Sort.Direction.DESC, "lastUpdated"));
+        return addFilters(query, criteria);
+    }
+
+    // Seeks past the cursor on the (lastUpdated, scheduledTime, flightId) index instead of skipping documents
+    public static Query buildKeysetQuery(FlightSearchCriteria criteria, FlightCursor cursor, int size) {
+        Query query = new Query()
+            .limit(limit(size))
+            .with(KEYSET_SORT);
+
+        if (cursor != null) {
+            query.addCriteria(new Criteria().orOperator(
+                Criteria.where("lastUpdated").lt(cursor.lastUpdated()),
+                Criteria.where("lastUpdated").is(cursor.lastUpdated()).and("scheduledTime").lt(cursor.scheduledTime()),
+                Criteria.where("lastUpdated").is(cursor.lastUpdated()).and("scheduledTime").is(cursor.scheduledTime())
+                    .and("flightId").lt(cursor.flightId())));
+        }
+
+        return addFilters(query, criteria);
+    }
+
+    public static FlightCursor parseCursor(String token) {
+        if (token == null || token.isEmpty()) return null;
+        try {
+            return FlightCursor.decode(token);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
+    // Comma separated field names and/or preset names; null means the full Flight
+    public static List<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) return null;
+
+        List<String> selected = new ArrayList<>();
+        for (String name : fields.split(",")) {
+            String field = name.trim();
+            if (field.isEmpty()) continue;
+            List<String> preset = FIELD_PRESETS.get(field);
+            if (preset == null && !SELECTABLE_FIELDS.containsKey(field)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown field: " + field);
+            }
+            for (String selectedField : preset != null ? preset : List.of(field)) {
+                if (!selected.contains(selectedField)) selected.add(selectedField);
+            }
+        }
+        return selected.isEmpty() ? null : List.copyOf(selected);
+    }
+
+    public static Map<String, Object> selectFields(Flight flight, List<String> fields) {
+        Map<String, Object> selected = new LinkedHashMap<>();
+        for (String field : fields) {
+            selected.put(field, SELECTABLE_FIELDS.get(field).apply(flight));
+        }
+        return selected;
+    }
+
+    // Reads only the selected fields from Mongo, plus the keyset fields the next cursor is built from
+    public static Query project(Query query, List<String> fields) {
+        if (fields == null) return query;
+
+        query.fields().exclude("_id");
+        fields.forEach(field -> query.fields().include(field));
+        List.of("lastUpdated", "scheduledTime", "flightId").forEach(field -> query.fields().include(field));
+        return query;
+    }
+
+    public static LocalDate parseDate(String date) {
+        if (date == null || date.isEmpty()) return null;
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Dates must be formatted as yyyy-MM-dd");
+        }
+    }
+
+    private static Query addFilters(Query query, FlightSearchCriteria criteria) {
+        if (criteria.airlineCode() != null) query.addCriteria(Criteria.where("airlineCode").is(criteria.airlineCode()));
+        if (criteria.flightNumber() != null) query.addCriteria(Criteria.where("flightNumber").is(criteria.flightNumber()));
+        if (criteria.direction() != null) query.addCriteria(Criteria.where("direction").is(criteria.direction()));
+        if (criteria.city() != null) query.addCriteria(Criteria.where("cityName").is(criteria.city()));
+        if (criteria.status() != null) query.addCriteria(Criteria.where("statusEn").is(criteria.status()));
+
+        if (criteria.scheduledDate() != null) query.addCriteria(onDate("scheduledTime", criteria.scheduledDate()));
+        if (criteria.estimatedDate() != null) query.addCriteria(onDate("estimatedTime", criteria.estimatedDate()));
+
+        return query;
+    }
+
+    // Half-open day range, so the compound indexes can serve date filters
+    private static Criteria onDate(String field, LocalDate date) {
+        return Criteria.where(field).gte(date.atStartOfDay()).lt(date.plusDays(1).atStartOfDay());
+    }
 }
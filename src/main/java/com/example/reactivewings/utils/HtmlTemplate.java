@@ -0,0 +1,106 @@
+package com.example.reactivewings.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A template parsed once into static text and {@code {{name}}} slots. Slot names are declared at
+ * compile time and values are passed in that order, so rendering is a walk over the segments into
+ * a per-thread buffer with no lookups. Values are HTML-escaped, except {@link Fragment}s, which
+ * write already-safe markup straight into the buffer.
+ */
+public final class HtmlTemplate {
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(8 * 1024));
+
+    private final String[] segments;
+    private final int[] slots;
+    private final int sizeHint;
+
+    private HtmlTemplate(String[] segments, int[] slots) {
+        this.segments = segments;
+        this.slots = slots;
+        this.sizeHint = Arrays.stream(segments).mapToInt(String::length).sum() + 256;
+    }
+
+    // Markup that renders itself; used for nested templates and pre-escaped lists
+    @FunctionalInterface
+    public interface Fragment {
+        void appendTo(StringBuilder out);
+    }
+
+    public static HtmlTemplate compile(String source, String... slotNames) {
+        List<String> names = List.of(slotNames);
+        List<String> segments = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+
+        int from = 0;
+        int open;
+        while ((open = source.indexOf("{{", from)) >= 0) {
+            int close = source.indexOf("}}", open + 2);
+            if (close < 0) throw new IllegalArgumentException("Unclosed slot at " + open);
+            String name = source.substring(open + 2, close).trim();
+            int slot = names.indexOf(name);
+            if (slot < 0) throw new IllegalArgumentException("Undeclared slot {{" + name + "}}");
+
+            segments.add(source.substring(from, open));
+            slots.add(slot);
+            from = close + 2;
+        }
+        segments.add(source.substring(from));
+
+        return new HtmlTemplate(segments.toArray(String[]::new), slots.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public String render(Object... values) {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        out.ensureCapacity(sizeHint);
+        appendTo(out, values);
+        String html = out.toString();
+        if (out.capacity() > MAX_RETAINED_BUFFER) BUFFER.remove();
+        return html;
+    }
+
+    public void appendTo(StringBuilder out, Object... values) {
+        for (int i = 0; i < slots.length; i++) {
+            out.append(segments[i]);
+            append(out, values[slots[i]]);
+        }
+        out.append(segments[segments.length - 1]);
+    }
+
+    // Binds values for use as a slot value of another template
+    public Fragment with(Object... values) {
+        return out -> appendTo(out, values);
+    }
+
+    private static void append(StringBuilder out, Object value) {
+        if (value == null) return;
+        if (value instanceof Fragment fragment) {
+            fragment.appendTo(out);
+        } else {
+            escape(out, value instanceof CharSequence text ? text : value.toString());
+        }
+    }
+
+    public static void escape(StringBuilder out, CharSequence text) {
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String entity = switch (text.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&#39;";
+                default -> null;
+            };
+            if (entity != null) {
+                out.append(text, start, i).append(entity);
+                start = i + 1;
+            }
+        }
+        out.append(text, start, text.length());
+    }
+}
@@ -2,29 +2,29 @@ package com.example.reactivewings.utils;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import com.example.reactivewings.model.FieldChange;
+
 public class SubscriptionServiceUtils {
     private static final DateTimeFormatter DISPLAY_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
 
-    public static boolean updateField(String fieldName,
-            Supplier<String> oldValSupplier,
-            Supplier<String> newValSupplier,
-            Consumer<String> setter,
-            StringBuilder changeLog) {
-        String oldVal = oldValSupplier.get();
-        String newVal = newValSupplier.get();
+    public static <T> boolean updateField(String fieldName,
+            Supplier<T> oldValSupplier,
+            Supplier<T> newValSupplier,
+            Consumer<T> setter,
+            List<FieldChange> changes) {
+        T oldVal = oldValSupplier.get();
+        T newVal = newValSupplier.get();
 
         if (!Objects.equals(oldVal, newVal)) {
-            changeLog.append(fieldName)
-                    .append(": ")
-                    .append(formatValue(oldVal))
-                    .append(" \u2192 ")
-                    .append(formatValue(newVal))
-                    .append("<br>");
+            changes.add(new FieldChange(fieldName, formatValue(oldVal), formatValue(newVal)));
             setter.accept(newVal);
             return true;
         }
@@ -32,15 +32,26 @@ public class SubscriptionServiceUtils {
         return false;
     }
 
-    private static String formatValue(String value) {
+    // Folds consecutive change lists into one: each field goes from its first old value to its last new value
+    public static List<FieldChange> mergeChanges(List<List<FieldChange>> changeLists) {
+        Map<String, FieldChange> merged = new LinkedHashMap<>();
+        changeLists.forEach(changes -> changes.forEach(change -> merged.merge(change.field(), change,
+            (first, last) -> new FieldChange(first.field(), first.from(), last.to()))));
+
+        List<FieldChange> result = new ArrayList<>();
+        merged.values().stream()
+            .filter(change -> !Objects.equals(change.from(), change.to()))
+            .forEach(result::add);
+        return result;
+    }
+
+    private static String formatValue(Object value) {
         if (value == null)
             return "לא זמין";
 
-        try {
-            LocalDateTime dateTime = LocalDateTime.parse(value);
+        if (value instanceof LocalDateTime dateTime)
             return dateTime.format(DISPLAY_FORMATTER);
-        } catch (DateTimeParseException e) {
-            return value;
-        }
+
+        return value.toString();
     }
 }
@@ -0,0 +1,183 @@
+package com.example.reactivewings.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical hashed timing wheel. Level 0 has one slot per tick; each level above has slots as
+ * wide as the whole level below, so a few levels of {@code wheelSize} slots cover years. An entry
+ * sits in the lowest level whose higher digits it shares with the current tick, in a doubly linked
+ * slot, which makes schedule, cancel and reschedule O(1). As time passes, entries of a higher slot
+ * are cascaded into the levels below and expire from level 0.
+ *
+ * <p>The wheel is driven by {@link #advance(long)} with a caller-supplied clock and is guarded by
+ * its own monitor, so any thread may schedule while one thread advances it.
+ */
+public final class TimerWheel<T> {
+    private final long tickMs;
+    private final int wheelSize;
+    private final List<Slot<T>[]> levels = new ArrayList<>();
+    // Entries already due when scheduled; returned by the next advance
+    private final Slot<T> overdue = new Slot<>();
+    private long currentTick;
+    private int size;
+
+    public TimerWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize < 2) throw new IllegalArgumentException("tickMs must be positive and wheelSize at least 2");
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.currentTick = startMs / tickMs;
+    }
+
+    public static final class Timeout<T> {
+        private final T value;
+        private long deadlineTick;
+        private Slot<T> slot;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T value) {
+            this.value = value;
+        }
+
+        public T value() {
+            return value;
+        }
+    }
+
+    public synchronized Timeout<T> schedule(T value, long deadlineMs) {
+        Timeout<T> timeout = new Timeout<>(value);
+        place(timeout, deadlineMs / tickMs);
+        size++;
+        return timeout;
+    }
+
+    // Moves a pending timeout to a new deadline; one that already expired or was cancelled is scheduled again
+    public synchronized Timeout<T> reschedule(Timeout<T> timeout, long deadlineMs) {
+        if (timeout.slot == null) return schedule(timeout.value, deadlineMs);
+        timeout.slot.unlink(timeout);
+        place(timeout, deadlineMs / tickMs);
+        return timeout;
+    }
+
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout.slot == null) return false;
+        timeout.slot.unlink(timeout);
+        size--;
+        return true;
+    }
+
+    public synchronized boolean isPending(Timeout<T> timeout) {
+        return timeout.slot != null;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Expires every entry whose deadline falls at or before nowMs, in deadline order by tick
+    public synchronized List<T> advance(long nowMs) {
+        List<T> expired = new ArrayList<>();
+        drain(overdue, expired);
+
+        long targetTick = nowMs / tickMs;
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+            if (!levels.isEmpty()) drain(levels.get(0)[(int) (currentTick % wheelSize)], expired);
+            // Cascaded entries due exactly at this tick
+            drain(overdue, expired);
+        }
+        return expired;
+    }
+
+    // Higher slots whose span starts at this tick move down, top level first so nothing is skipped
+    private void cascade() {
+        int top = 0;
+        long quotient = currentTick;
+        while (top + 1 < levels.size() && quotient % wheelSize == 0) {
+            quotient /= wheelSize;
+            top++;
+        }
+        for (int level = top; level >= 1; level--) {
+            Slot<T> slot = levels.get(level)[(int) digit(currentTick, level)];
+            Timeout<T> timeout = slot.head.next;
+            while (timeout != slot.head) {
+                Timeout<T> next = timeout.next;
+                slot.unlink(timeout);
+                place(timeout, timeout.deadlineTick);
+                timeout = next;
+            }
+        }
+    }
+
+    private void place(Timeout<T> timeout, long deadlineTick) {
+        timeout.deadlineTick = deadlineTick;
+        if (deadlineTick <= currentTick) {
+            overdue.link(timeout);
+            return;
+        }
+
+        int level = 0;
+        long deadline = deadlineTick / wheelSize;
+        long current = currentTick / wheelSize;
+        while (deadline != current) {
+            deadline /= wheelSize;
+            current /= wheelSize;
+            level++;
+        }
+        slots(level)[(int) digit(deadlineTick, level)].link(timeout);
+    }
+
+    private long digit(long tick, int level) {
+        for (int i = 0; i < level; i++) tick /= wheelSize;
+        return tick % wheelSize;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Slot<T>[] slots(int level) {
+        while (levels.size() <= level) {
+            Slot<T>[] slots = new Slot[wheelSize];
+            for (int i = 0; i < wheelSize; i++) slots[i] = new Slot<>();
+            levels.add(slots);
+        }
+        return levels.get(level);
+    }
+
+    private void drain(Slot<T> slot, List<T> expired) {
+        Timeout<T> timeout = slot.head.next;
+        while (timeout != slot.head) {
+            Timeout<T> next = timeout.next;
+            slot.unlink(timeout);
+            size--;
+            expired.add(timeout.value);
+            timeout = next;
+        }
+    }
+
+    // Circular list around a sentinel, so linking and unlinking never branch on the ends
+    private static final class Slot<T> {
+        private final Timeout<T> head = new Timeout<>(null);
+
+        Slot() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        void link(Timeout<T> timeout) {
+            timeout.slot = this;
+            timeout.prev = head.prev;
+            timeout.next = head;
+            head.prev.next = timeout;
+            head.prev = timeout;
+        }
+
+        void unlink(Timeout<T> timeout) {
+            timeout.prev.next = timeout.next;
+            timeout.next.prev = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.slot = null;
+        }
+    }
+}
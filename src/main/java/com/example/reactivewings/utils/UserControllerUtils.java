@@ -1,6 +1,8 @@
 package com.example.reactivewings.utils;
 
 import java.security.Principal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.security.oauth2.jwt.Jwt;
@@ -22,4 +24,9 @@ public class UserControllerUtils
 
         return principal.getName();
     }
+
+    // Unsubscribe has always matched any fragment of the feed's ISO timestamp, e.g. a date or a full time
+    public static boolean matchesScheduledTime(LocalDateTime scheduledTime, String fragment) {
+        return scheduledTime != null && DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(scheduledTime).contains(fragment);
+    }
 }
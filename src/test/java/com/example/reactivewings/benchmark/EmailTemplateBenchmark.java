@@ -0,0 +1,146 @@
+package com.example.reactivewings.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.example.reactivewings.model.FieldChange;
+import com.example.reactivewings.utils.EmailTemplates;
+
+/**
+ * Cost of rendering one flight change for every subscriber of the flight: the previous
+ * {@code String.formatted} templates (update body nested in the generic layout) per recipient,
+ * the compiled templates per recipient, and the compiled template once shared by all recipients.
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.reactivewings.benchmark.EmailTemplateBenchmark};
+ * the GC profiler reports bytes allocated per operation next to the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailTemplateBenchmark {
+	private static final String FORMATTED_FLIGHT_UPDATE = """
+	    <html dir="rtl">
+	    <head>
+	        <meta charset="UTF-8">
+	        <style>
+	        body { font-family: Arial, sans-serif; background-color: #f9f9f9; margin: 0; padding: 20px; direction: rtl; text-align: right; }
+	        .container { max-width: 600px; margin: auto; background: #ffffff; padding: 20px; border-radius: 8px; box-shadow: 0 2px 6px rgba(0,0,0,0.15); direction: rtl; text-align: right; }
+	        h2 { color: #2c3e50; text-align: right; }
+	        p { font-size: 14px; color: #333333; line-height: 1.5; text-align: right; }
+	        .changes { background: #f4f6f9; padding: 10px; border-right: 4px solid #3498db; margin: 15px 0; text-align: right; }
+	        .footer { font-size: 12px; color: #777777; margin-top: 20px; border-top: 1px solid #eeeeee; padding-top: 10px; text-align: right; }
+	        </style>
+	    </head>
+	    <body dir="rtl">
+	        <div class="container" dir="rtl">
+	        <h2>התראת עדכון טיסה ✈️</h2>
+	        <p>שלום,</p>
+	        <p>עודכנה טיסתך <b>%s %s</b> עם השינויים הבאים:</p>
+	        <div class="changes">
+	            <p>%s</p>
+	        </div>
+	        <p>נא לבדוק את פרטי הטיסה ולהגיע לשדה התעופה בהתאם.</p>
+	        <p>בברכה,<br/>reactivewings - מערכת התראות טיסות</p>
+	        <div class="footer">
+	            <p>זוהי הודעה אוטומטית. נא לא להשיב.</p>
+	        </div>
+	        </div>
+	    </body>
+	    </html>
+	    """;
+
+	private static final String FORMATTED_GENERIC = """
+	    <html dir="rtl">
+	    <head>
+	        <meta charset="UTF-8">
+	        <style>
+	        body { font-family: Arial, sans-serif; background-color: #f9f9f9; margin: 0; padding: 20px; direction: rtl; text-align: right; }
+	        .container { max-width: 600px; margin: auto; background: #ffffff; padding: 20px; border-radius: 8px; box-shadow: 0 2px 6px rgba(0,0,0,0.15); direction: rtl; text-align: right; }
+	        h2 { color: #2c3e50; text-align: right; }
+	        p { font-size: 14px; color: #333333; line-height: 1.5; text-align: right; }
+	        .footer { font-size: 12px; color: #777777; margin-top: 20px; border-top: 1px solid #eeeeee; padding-top: 10px; text-align: right; }
+	        </style>
+	    </head>
+	    <body dir="rtl">
+	        <div class="container" dir="rtl">
+	        <h2>%s</h2>
+	        <div>
+	            %s
+	        </div>
+	        <div class="footer">
+	            <p>reactivewings - מערכת התראות טיסות</p>
+	        </div>
+	        </div>
+	    </body>
+	    </html>
+	    """;
+
+	private static final List<FieldChange> CHANGES = List.of(
+		new FieldChange("זמן משוער", "07/09/2025 10:20", "07/09/2025 11:05"),
+		new FieldChange("סטטוס", "בזמן", "מעוכב"),
+		new FieldChange("דלפקים", "101-110", "111-120"));
+
+	@Param({"1", "100"})
+	public int subscribers;
+
+	@Benchmark
+	public int formattedPerRecipient() {
+		int length = 0;
+		for (int i = 0; i < subscribers; i++) {
+			StringBuilder changeLog = new StringBuilder();
+			CHANGES.forEach(change -> changeLog.append(change.field()).append(": ").append(change.from())
+				.append(" \u2192 ").append(change.to()).append("<br>"));
+			String subject = "עדכון טיסה LY 001 - reactivewings";
+			String body = FORMATTED_FLIGHT_UPDATE.formatted("LY", "001", changeLog.toString().replace("\n", "<br/>"));
+			length += FORMATTED_GENERIC.formatted(subject, body).length();
+		}
+		return length;
+	}
+
+	@Benchmark
+	public int compiledPerRecipient() {
+		int length = 0;
+		for (int i = 0; i < subscribers; i++) {
+			length += EmailTemplates.flightUpdateHtml("LY", "001", CHANGES).length();
+		}
+		return length;
+	}
+
+	@Benchmark
+	public int compiledShared() {
+		String html = EmailTemplates.flightUpdateHtml("LY", "001", CHANGES);
+		int length = 0;
+		for (int i = 0; i < subscribers; i++) {
+			length += html.length();
+		}
+		return length;
+	}
+
+	public static void main(String[] args) {
+		try {
+			new Runner(new OptionsBuilder()
+				.include(EmailTemplateBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+		} catch (RunnerException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
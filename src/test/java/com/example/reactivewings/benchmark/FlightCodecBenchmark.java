@@ -0,0 +1,124 @@
+package com.example.reactivewings.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.example.reactivewings.model.Flight;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Encode/decode cost of a 500 flight page as JSON versus Smile. Run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.reactivewings.benchmark.FlightCodecBenchmark};
+ * payload sizes are printed before the measurements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlightCodecBenchmark {
+	private static final TypeReference<List<Flight>> FLIGHTS = new TypeReference<>() {};
+
+	@Param({"json", "smile"})
+	public String format;
+
+	private ObjectMapper mapper;
+	private List<Flight> page;
+	private byte[] encoded;
+
+	@Setup
+	public void setUp() throws Exception {
+		mapper = mapper(format);
+		page = samplePage(500);
+		encoded = mapper.writeValueAsBytes(page);
+	}
+
+	@Benchmark
+	public byte[] encode() throws Exception {
+		return mapper.writeValueAsBytes(page);
+	}
+
+	@Benchmark
+	public List<Flight> decode() throws Exception {
+		return mapper.readValue(encoded, FLIGHTS);
+	}
+
+	private static ObjectMapper mapper(String format) {
+		// Mirrors Spring Boot's defaults, which the app's codecs are built from
+		Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+			.featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+		return "smile".equals(format) ? builder.factory(new SmileFactory()).build() : builder.build();
+	}
+
+	private static List<Flight> samplePage(int size) {
+		String[][] airlines = {{"LY", "EL AL ISRAEL AIRLINES"}, {"6H", "ISRAIR AIRLINES"}, {"W6", "WIZZ AIR"}, {"FR", "RYANAIR"}};
+		String[][] cities = {{"LONDON", "לונדון", "UNITED KINGDOM", "בריטניה"}, {"PARIS", "פריז", "FRANCE", "צרפת"},
+			{"NEW YORK", "ניו יורק", "UNITED STATES", "ארצות הברית"}, {"ATHENS", "אתונה", "GREECE", "יוון"}};
+		LocalDateTime base = LocalDateTime.of(2025, 9, 7, 6, 0);
+
+		List<Flight> flights = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			String[] airline = airlines[i % airlines.length];
+			String[] city = cities[i % cities.length];
+			Flight flight = new Flight();
+			flight.setId(Integer.toHexString(0x5f000000 + i));
+			flight.setFlightId((long) i);
+			flight.setAirlineCode(airline[0]);
+			flight.setAirlineName(airline[1]);
+			flight.setFlightNumber(String.valueOf(100 + i));
+			flight.setScheduledTime(base.plusMinutes(5L * i));
+			flight.setEstimatedTime(base.plusMinutes(5L * i + 10));
+			flight.setDirection(i % 2 == 0 ? "D" : "A");
+			flight.setAirportCode(city[0].substring(0, 3));
+			flight.setCityEn(city[0]);
+			flight.setCityHe(city[1]);
+			flight.setCityName(city[0]);
+			flight.setCountryEn(city[2]);
+			flight.setCountryHe(city[3]);
+			flight.setTerminal(3);
+			flight.setCounters("101-120");
+			flight.setCheckinZone("C");
+			flight.setStatusEn(i % 3 == 0 ? "DELAYED" : "ON TIME");
+			flight.setStatusHe(i % 3 == 0 ? "מעוכב" : "בזמן");
+			flight.setContentHash(Integer.toHexString(i * 31));
+			flight.setLastUpdated(base);
+			flights.add(flight);
+		}
+		return flights;
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<Flight> page = samplePage(500);
+		for (String format : List.of("json", "smile")) {
+			System.out.printf("%s payload for %d flights: %d bytes%n", format, page.size(), mapper(format).writeValueAsBytes(page).length);
+		}
+
+		try {
+			new Runner(new OptionsBuilder().include(FlightCodecBenchmark.class.getSimpleName()).build()).run();
+		} catch (RunnerException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
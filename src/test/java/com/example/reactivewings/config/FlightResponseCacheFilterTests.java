@@ -0,0 +1,134 @@
+package com.example.reactivewings.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.WebFilterChain;
+
+import com.example.reactivewings.service.FlightBoard;
+import com.example.reactivewings.service.FlightBoardService;
+
+import reactor.core.publisher.Mono;
+
+class FlightResponseCacheFilterTests {
+
+	private final FlightBoardService boardService = mock(FlightBoardService.class);
+	private final FlightResponseCacheFilter filter = new FlightResponseCacheFilter(boardService);
+	private final AtomicInteger renders = new AtomicInteger();
+
+	@BeforeEach
+	void configure() {
+		ReflectionTestUtils.setField(filter, "maxEntries", 16);
+		ReflectionTestUtils.setField(filter, "maxBodyBytes", 1 << 20);
+		showBoard(1);
+	}
+
+	@Test
+	void servesARepeatedQueryFromTheCache() {
+		MockServerHttpResponse first = get(MockServerHttpRequest.get("/flights/search?airline=LY&direction=D"));
+		MockServerHttpResponse second = get(MockServerHttpRequest.get("/flights/search?direction=D&airline=LY"));
+
+		assertThat(renders).hasValue(1);
+		assertThat(first.getBodyAsString().block()).isEqualTo("{\"generation\":1}");
+		assertThat(second.getBodyAsString().block()).isEqualTo("{\"generation\":1}");
+		assertThat(second.getHeaders().getETag()).isEqualTo("\"g1\"");
+	}
+
+	@Test
+	void rendersADifferentQuery() {
+		get(MockServerHttpRequest.get("/flights/search?airline=LY"));
+		get(MockServerHttpRequest.get("/flights/search?airline=W6"));
+
+		assertThat(renders).hasValue(2);
+	}
+
+	@Test
+	void neverServesAnEntryOfAnOlderGeneration() {
+		get(MockServerHttpRequest.get("/flights/"));
+
+		// The swap's invalidation event may not have arrived yet; the generation check alone must miss
+		showBoard(2);
+		MockServerHttpResponse response = get(MockServerHttpRequest.get("/flights/"));
+
+		assertThat(renders).hasValue(2);
+		assertThat(response.getBodyAsString().block()).isEqualTo("{\"generation\":2}");
+	}
+
+	@Test
+	void answersNotModifiedFromTheCacheForAMatchingETag() {
+		get(MockServerHttpRequest.get("/flights/"));
+
+		MockServerHttpResponse response = get(MockServerHttpRequest.get("/flights/").ifNoneMatch("\"g1\""));
+
+		assertThat(renders).hasValue(1);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+	}
+
+	@Test
+	void choosesTheGzipVariantByAcceptEncoding() throws IOException {
+		get(MockServerHttpRequest.get("/flights/"));
+
+		MockServerHttpResponse gzipped = get(MockServerHttpRequest.get("/flights/").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"));
+		MockServerHttpResponse plain = get(MockServerHttpRequest.get("/flights/"));
+
+		assertThat(renders).hasValue(1);
+		assertThat(gzipped.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytesOf(gzipped)))) {
+			assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("{\"generation\":1}");
+		}
+		assertThat(plain.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+		assertThat(plain.getBodyAsString().block()).isEqualTo("{\"generation\":1}");
+	}
+
+	private void showBoard(long generation) {
+		when(boardService.current()).thenReturn(new FlightBoard(List.of(), generation));
+	}
+
+	private MockServerHttpResponse get(MockServerHttpRequest.BaseBuilder<?> request) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(request);
+		filter.filter(exchange, controller()).block();
+		return exchange.getResponse();
+	}
+
+	// Stands in for FlightsController: renders the current generation with its validators
+	private WebFilterChain controller() {
+		return exchange -> {
+			renders.incrementAndGet();
+			long generation = boardService.current().generation();
+			ServerHttpResponse response = exchange.getResponse();
+			response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+			response.getHeaders().setETag("\"g" + generation + "\"");
+			response.getHeaders().setLastModified(1_700_000_000_000L + generation * 1000);
+			byte[] body = ("{\"generation\":" + generation + "}").getBytes(StandardCharsets.UTF_8);
+			return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+		};
+	}
+
+	private static byte[] bytesOf(MockServerHttpResponse response) {
+		DataBuffer joined = DataBufferUtils.join(response.getBody()).block();
+		byte[] bytes = new byte[joined.readableByteCount()];
+		joined.read(bytes);
+		DataBufferUtils.release(joined);
+		return bytes;
+	}
+}
@@ -0,0 +1,52 @@
+package com.example.reactivewings.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class NotificationOutboxEntryTests {
+
+	@Test
+	void repeatedCycleBeforeTheSaveRebuildsTheSameKey() {
+		Subscription subscription = Subscription.of("traveller@example.com", flight("On time"));
+
+		String first = NotificationOutboxEntry.flightUpdate(user(), subscription, flight("Delayed"), changes()).getId();
+		String replay = NotificationOutboxEntry.flightUpdate(user(), subscription, flight("Delayed"), changes()).getId();
+
+		assertThat(replay).isEqualTo(first).isEqualTo(subscription.getId() + ":1");
+	}
+
+	@Test
+	void flightReturningToAnEarlierStateGetsANewKey() {
+		Subscription subscription = Subscription.of("traveller@example.com", flight("On time"));
+
+		String delayed = NotificationOutboxEntry.flightUpdate(user(), subscription, flight("Delayed"), changes()).getId();
+		subscription.setRevision(1);
+		String backOnTime = NotificationOutboxEntry.flightUpdate(user(), subscription, flight("On time"), changes()).getId();
+		subscription.setRevision(2);
+		String delayedAgain = NotificationOutboxEntry.flightUpdate(user(), subscription, flight("Delayed"), changes()).getId();
+
+		assertThat(List.of(delayed, backOnTime, delayedAgain)).doesNotHaveDuplicates();
+	}
+
+	private static User user() {
+		return new User("traveller@example.com");
+	}
+
+	private static List<FieldChange> changes() {
+		return List.of(new FieldChange("status", "On time", "Delayed"));
+	}
+
+	private static Flight flight(String status) {
+		Flight flight = new Flight();
+		flight.setFlightId(7L);
+		flight.setAirlineCode("LY");
+		flight.setFlightNumber("001");
+		flight.setScheduledTime(LocalDateTime.of(2024, 5, 1, 10, 0));
+		flight.setStatusHe(status);
+		return flight;
+	}
+}
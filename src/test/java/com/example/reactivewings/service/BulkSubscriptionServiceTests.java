@@ -0,0 +1,150 @@
+package com.example.reactivewings.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.bson.BsonString;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.example.reactivewings.model.Flight;
+import com.example.reactivewings.model.FlightKey;
+import com.example.reactivewings.model.Subscription;
+import com.example.reactivewings.model.SubscriptionResult;
+import com.example.reactivewings.model.SubscriptionResult.Status;
+import com.example.reactivewings.model.User;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+
+import reactor.core.publisher.Mono;
+
+class BulkSubscriptionServiceTests {
+
+	private final ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+	private final EmailSenderService emailSenderService = mock(EmailSenderService.class);
+	private final FlightReminderScheduler reminders = mock(FlightReminderScheduler.class);
+	private final BulkSubscriptionService service = new BulkSubscriptionService(mongoTemplate, emailSenderService,
+		mock(SubscriptionIndex.class), mock(SubscriptionArchiver.class), reminders);
+
+	// Subscription ids in the fake collection, and the size of every subscription bulk written
+	private final Set<String> stored = new HashSet<>();
+	private final List<Integer> chunks = new ArrayList<>();
+
+	@BeforeEach
+	void configure() {
+		ReflectionTestUtils.setField(service, "batchSize", 2);
+		ReflectionTestUtils.setField(service, "maxItems", 5000);
+		when(mongoTemplate.getConverter()).thenReturn(mock(MongoConverter.class));
+		when(mongoTemplate.bulkOps(eq(BulkMode.UNORDERED), eq(User.class))).thenAnswer(call -> userBulk());
+		when(mongoTemplate.bulkOps(eq(BulkMode.UNORDERED), eq(Subscription.class))).thenAnswer(call -> subscriptionBulk());
+		when(emailSenderService.sendSubscriptionsConfirmationEmailAsync(any(), anyList())).thenReturn(Mono.empty());
+	}
+
+	@Test
+	void reportsCreatedAndExistingPerChunkAndConfirmsEachUserOnce() {
+		Flight ly001 = flight("LY", "001", "2025-01-01T10:00:00");
+		Flight ba165 = flight("BA", "165", "2025-01-01T11:30:00");
+		Flight undated = flight("W6", "2301", null);
+		stored.add(Subscription.idOf("a@example.com", "LY", "001", LocalDateTime.parse("2025-01-01T10:00:00")));
+
+		List<SubscriptionResult> results = service.subscribe(List.of("a@example.com", "b@example.com"), List.of(ly001, ba165, undated))
+			.collectList()
+			.block();
+
+		assertThat(results).extracting(SubscriptionResult::userId, SubscriptionResult::flightNumber, SubscriptionResult::status)
+			.containsExactly(
+				tuple("a@example.com", "2301", Status.INVALID),
+				tuple("b@example.com", "2301", Status.INVALID),
+				tuple("a@example.com", "001", Status.EXISTING),
+				tuple("a@example.com", "165", Status.CREATED),
+				tuple("b@example.com", "001", Status.CREATED),
+				tuple("b@example.com", "165", Status.CREATED));
+		assertThat(chunks).containsExactly(2, 2);
+		verify(reminders, times(3)).schedule(any());
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<List<Subscription>> confirmed = ArgumentCaptor.forClass(List.class);
+		verify(emailSenderService).sendSubscriptionsConfirmationEmailAsync(eq("a@example.com"), confirmed.capture());
+		assertThat(confirmed.getValue()).extracting(Subscription::getFlightNumber).containsExactly("165");
+		verify(emailSenderService).sendSubscriptionsConfirmationEmailAsync(eq("b@example.com"), confirmed.capture());
+		assertThat(confirmed.getValue()).extracting(Subscription::getFlightNumber).containsExactly("001", "165");
+	}
+
+	@Test
+	void rejectsMoreThanTheMaximumPairsWithABadRequest() {
+		List<String> users = List.of("a@example.com", "b@example.com");
+		List<Flight> flights = Collections.nCopies(2501, flight("LY", "001", "2025-01-01T10:00:00"));
+		List<FlightKey> keys = IntStream.range(0, 2501)
+			.mapToObj(i -> new FlightKey("LY", String.valueOf(i), LocalDateTime.parse("2025-01-01T10:00:00")))
+			.toList();
+
+		assertThatThrownBy(() -> service.subscribe(users, flights))
+			.isInstanceOfSatisfying(ResponseStatusException.class,
+				error -> assertThat(error.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+		assertThatThrownBy(() -> service.unsubscribe(users, keys))
+			.isInstanceOfSatisfying(ResponseStatusException.class,
+				error -> assertThat(error.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+		verifyNoInteractions(emailSenderService);
+	}
+
+	private static Flight flight(String airline, String number, String scheduledTime) {
+		Flight flight = new Flight();
+		flight.setAirlineCode(airline);
+		flight.setFlightNumber(number);
+		flight.setDirection("D");
+		flight.setScheduledTime(scheduledTime == null ? null : LocalDateTime.parse(scheduledTime));
+		return flight;
+	}
+
+	private static ReactiveBulkOperations userBulk() {
+		ReactiveBulkOperations bulk = mock(ReactiveBulkOperations.class);
+		when(bulk.upsert(any(Query.class), any())).thenReturn(bulk);
+		when(bulk.execute()).thenReturn(Mono.just(BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of())));
+		return bulk;
+	}
+
+	// Upserts into the fake collection: only ids that weren't stored yet are reported as upserted, by index
+	private ReactiveBulkOperations subscriptionBulk() {
+		List<String> ids = new ArrayList<>();
+		ReactiveBulkOperations bulk = mock(ReactiveBulkOperations.class);
+		when(bulk.upsert(any(Query.class), any())).thenAnswer(call -> {
+			ids.add(((Query) call.getArgument(0)).getQueryObject().getString("_id"));
+			return bulk;
+		});
+		when(bulk.execute()).thenAnswer(call -> Mono.fromCallable(() -> {
+			chunks.add(ids.size());
+			List<BulkWriteUpsert> upserts = new ArrayList<>();
+			for (int i = 0; i < ids.size(); i++) {
+				if (stored.add(ids.get(i))) upserts.add(new BulkWriteUpsert(i, new BsonString(ids.get(i))));
+			}
+			return BulkWriteResult.acknowledged(0, ids.size() - upserts.size(), 0, 0, upserts, List.of());
+		}));
+		return bulk;
+	}
+}
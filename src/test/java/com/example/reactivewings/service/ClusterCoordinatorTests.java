@@ -0,0 +1,190 @@
+package com.example.reactivewings.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.reactivewings.utils.ConsistentHashRing;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+
+import reactor.core.publisher.Mono;
+
+class ClusterCoordinatorTests {
+
+	private static final String LEASES = "cluster_leases";
+	private static final String LEASE = "flight-ingest";
+
+	private final ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+	private final Map<String, Document> leases = new HashMap<>();
+	private ClusterCoordinator coordinator;
+
+	@BeforeEach
+	void configure() {
+		fakeLeaseCollection();
+		coordinator = coordinator("a");
+	}
+
+	@Test
+	void ownsEveryUserUntilPartitioned() {
+		coordinator.updateMembers(List.of("a", "b", "c"));
+
+		assertThat(coordinator.isPartitioned()).isFalse();
+		for (int i = 0; i < 100; i++) {
+			assertThat(coordinator.owns("user" + i + "@example.com")).isTrue();
+		}
+	}
+
+	@Test
+	void ownsOnlyItsShareOfThePartitionedUsers() {
+		coordinator.partitionByUser();
+		ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b"), 64);
+
+		coordinator.updateMembers(List.of("b", "a"));
+
+		int owned = 0;
+		for (int i = 0; i < 1000; i++) {
+			String user = "user" + i + "@example.com";
+			assertThat(coordinator.owns(user)).isEqualTo("a".equals(ring.ownerOf(user)));
+			if (coordinator.owns(user)) owned++;
+		}
+		assertThat(owned).isBetween(300, 700);
+	}
+
+	@Test
+	void publishesARebalanceOnlyWhenTheMembersChange() {
+		List<List<String>> rebalances = new ArrayList<>();
+		coordinator.rebalances().subscribe(ring -> rebalances.add(ring.nodes()));
+
+		coordinator.updateMembers(List.of("a"));
+		assertThat(coordinator.whenJoined().toFuture()).isDone();
+
+		coordinator.updateMembers(List.of("a", "b"));
+		coordinator.updateMembers(List.of("b", "a"));
+		coordinator.updateMembers(List.of("a"));
+
+		// The first view of the members is the initial ring, not a rebalance
+		assertThat(rebalances).containsExactly(List.of("a", "b"), List.of("a"));
+	}
+
+	@Test
+	void takingOverAnExpiredLeaseBumpsTheTokenAndFencesOffTheOldHolder() {
+		ClusterCoordinator other = coordinator("b");
+
+		assertThat(coordinator.acquire(LEASE).block()).isEqualTo(1L);
+		assertThat(other.acquire(LEASE).block()).isNull();
+
+		leases.get(LEASE).put("expiresAt", LocalDateTime.now().minusSeconds(1));
+		assertThat(other.acquire(LEASE).block()).isEqualTo(2L);
+
+		assertThatThrownBy(() -> coordinator.checkFence(LEASE, 1L).block()).isInstanceOf(LeaseLostException.class);
+		other.checkFence(LEASE, 2L).block();
+	}
+
+	@Test
+	void releasingTheLeaseOnShutdownKeepsTheTokenGrowing() {
+		assertThat(coordinator.acquire(LEASE).block()).isEqualTo(1L);
+
+		coordinator.stop();
+
+		assertThat(leases.get(LEASE)).containsEntry("token", 1L).doesNotContainKey("owner");
+		assertThat(coordinator.acquire(LEASE).block()).isEqualTo(2L);
+	}
+
+	@Test
+	void aDisabledClusterWritesUnfenced() {
+		ClusterCoordinator single = new ClusterCoordinator(mongoTemplate, "single");
+
+		assertThat(single.acquire(LEASE).block()).isEqualTo(ClusterCoordinator.UNFENCED);
+		assertThat(ClusterCoordinator.fenced(Criteria.where("flightId").is(1L), ClusterCoordinator.UNFENCED).getQueryObject())
+			.doesNotContainKey("fence");
+		assertThat(ClusterCoordinator.fenced(Criteria.where("flightId").is(1L), 3L).getQueryObject())
+			.containsKey("fence");
+	}
+
+	private ClusterCoordinator coordinator(String nodeId) {
+		ClusterCoordinator node = new ClusterCoordinator(mongoTemplate, nodeId);
+		ReflectionTestUtils.setField(node, "enabled", true);
+		ReflectionTestUtils.setField(node, "virtualNodes", 64);
+		ReflectionTestUtils.setField(node, "leaseMs", 30000L);
+		return node;
+	}
+
+	// Just enough of cluster_leases: equality and $lt/$gt on dates in filters, $set/$unset/$inc in updates
+	private void fakeLeaseCollection() {
+		when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Document.class), eq(LEASES)))
+			.thenAnswer(call -> Mono.defer(() -> upsert(call.getArgument(0), call.getArgument(1))));
+		when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(LEASES)))
+			.thenAnswer(call -> Mono.fromCallable(() -> update(call.getArgument(0), call.getArgument(1))));
+		when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(LEASES)))
+			.thenAnswer(call -> Mono.fromCallable(() -> update(call.getArgument(0), call.getArgument(1))));
+		when(mongoTemplate.exists(any(Query.class), eq(LEASES)))
+			.thenAnswer(call -> Mono.fromCallable(() -> leases.values().stream().anyMatch(lease -> matches(lease, call.getArgument(0)))));
+		when(mongoTemplate.remove(any(Query.class), eq(LEASES))).thenAnswer(call -> Mono.fromCallable(() -> {
+			Query query = call.getArgument(0);
+			long removed = leases.values().stream().filter(lease -> matches(lease, query)).count();
+			leases.values().removeIf(lease -> matches(lease, query));
+			return DeleteResult.acknowledged(removed);
+		}));
+		when(mongoTemplate.remove(any(Query.class), eq("cluster_nodes"))).thenReturn(Mono.just(DeleteResult.acknowledged(1)));
+	}
+
+	private Mono<Document> upsert(Query query, Update update) {
+		Document lease = leases.values().stream().filter(candidate -> matches(candidate, query)).findFirst().orElse(null);
+		if (lease == null) {
+			Object id = query.getQueryObject().get("_id");
+			if (leases.containsKey(id)) return Mono.error(new DuplicateKeyException("lease " + id + " is held"));
+			lease = new Document("_id", id);
+			leases.put((String) id, lease);
+		}
+		apply(lease, update);
+		return Mono.just(new Document(lease));
+	}
+
+	private UpdateResult update(Query query, Update update) {
+		List<Document> matched = leases.values().stream().filter(lease -> matches(lease, query)).toList();
+		matched.forEach(lease -> apply(lease, update));
+		return UpdateResult.acknowledged(matched.size(), (long) matched.size(), null);
+	}
+
+	private static boolean matches(Document lease, Query query) {
+		return query.getQueryObject().entrySet().stream().allMatch(condition -> {
+			Object actual = lease.get(condition.getKey());
+			if (!(condition.getValue() instanceof Document operators)) return Objects.equals(actual, condition.getValue());
+			if (actual == null) return false;
+			int comparison = ((LocalDateTime) actual).compareTo((LocalDateTime) operators.values().iterator().next());
+			return operators.containsKey("$lt") ? comparison < 0 : comparison > 0;
+		});
+	}
+
+	private static void apply(Document lease, Update update) {
+		Document operations = update.getUpdateObject();
+		Document set = operations.get("$set", Document.class);
+		if (set != null) lease.putAll(set);
+		Document unset = operations.get("$unset", Document.class);
+		if (unset != null) unset.keySet().forEach(lease::remove);
+		Document inc = operations.get("$inc", Document.class);
+		if (inc != null) inc.forEach((field, by) -> lease.put(field, ((Number) lease.getOrDefault(field, 0L)).longValue() + ((Number) by).longValue()));
+	}
+}
@@ -0,0 +1,59 @@
+package com.example.reactivewings.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.reactivewings.model.Flight;
+import com.example.reactivewings.model.FlightSearchCriteria;
+
+class FlightBoardTests {
+
+	private static Flight flight(long id, String airline, String direction, String scheduledTime, int minutesAgo) {
+		Flight flight = new Flight();
+		flight.setFlightId(id);
+		flight.setAirlineCode(airline);
+		flight.setFlightNumber(String.valueOf(id));
+		flight.setDirection(direction);
+		flight.setScheduledTime(LocalDateTime.parse(scheduledTime));
+		flight.setLastUpdated(LocalDateTime.of(2025, 1, 1, 12, 0).minusMinutes(minutesAgo));
+		return flight;
+	}
+
+	private final FlightBoard board = new FlightBoard(List.of(
+		flight(1, "LY", "D", "2025-01-01T10:00:00", 5),
+		flight(2, "LY", "A", "2025-01-02T10:00:00", 1),
+		flight(3, "W6", "D", "2025-01-01T18:30:00", 3),
+		flight(4, "LY", "D", "2025-01-01T22:15:00", 2)));
+
+	@Test
+	void pagesInLastUpdatedDescendingOrder() {
+		assertThat(board.search(FlightSearchCriteria.ALL, 0, 2)).extracting(Flight::getFlightId).containsExactly(2L, 4L);
+		assertThat(board.search(FlightSearchCriteria.ALL, 2, 2)).extracting(Flight::getFlightId).containsExactly(3L, 1L);
+	}
+
+	@Test
+	void intersectsIndexesAndDateFilters() {
+		FlightSearchCriteria criteria = FlightSearchCriteria.of("ly", null, LocalDate.of(2025, 1, 1), null, "d", null, null);
+
+		assertThat(board.search(criteria, 0, 100)).extracting(Flight::getFlightId).containsExactly(4L, 1L);
+	}
+
+	@Test
+	void matchesWholeCalendarDays() {
+		FlightSearchCriteria criteria = FlightSearchCriteria.of(null, null, LocalDate.of(2025, 1, 2), null, null, null, null);
+
+		assertThat(board.search(criteria, 0, 100)).extracting(Flight::getFlightId).containsExactly(2L);
+	}
+
+	@Test
+	void unknownKeyYieldsNothing() {
+		FlightSearchCriteria criteria = FlightSearchCriteria.of("XX", null, null, null, null, null, null);
+
+		assertThat(board.search(criteria, 0, 100)).isEmpty();
+	}
+}
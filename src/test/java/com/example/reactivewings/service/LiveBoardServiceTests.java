@@ -0,0 +1,41 @@
+package com.example.reactivewings.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.reactivewings.model.Flight;
+import com.example.reactivewings.model.FlightBoardFrame;
+import com.example.reactivewings.model.FlightSearchCriteria;
+import com.example.reactivewings.utils.FlightSyncUtils;
+
+class LiveBoardServiceTests {
+
+	private static Flight flight(long id, String status) {
+		Flight flight = new Flight();
+		flight.setFlightId(id);
+		flight.setAirlineCode("LY");
+		flight.setStatusEn(status);
+		flight.setLastUpdated(LocalDateTime.of(2025, 1, 1, 12, 0));
+		flight.setContentHash(FlightSyncUtils.contentHash(flight));
+		return flight;
+	}
+
+	@Test
+	void deltaCarriesOnlyAddedChangedAndRemovedFlights() {
+		FlightBoard from = new FlightBoard(List.of(flight(1, "ON TIME"), flight(2, "ON TIME"), flight(3, "ON TIME")), 1);
+		FlightBoard to = new FlightBoard(List.of(flight(1, "ON TIME"), flight(2, "DELAYED"), flight(4, "ON TIME")), 2);
+
+		FlightBoardFrame delta = LiveBoardService.diff(FlightSearchCriteria.ALL, from, to);
+
+		assertThat(delta.generation()).isEqualTo(2);
+		assertThat(delta.flights()).extracting(Flight::getFlightId).containsExactly(4L);
+		assertThat(delta.changed()).singleElement()
+			.satisfies(fields -> assertThat(fields).containsEntry("flightId", 2L).containsEntry("statusEn", "DELAYED")
+				.doesNotContainKey("airlineCode"));
+		assertThat(delta.removed()).containsExactly(3L);
+	}
+}
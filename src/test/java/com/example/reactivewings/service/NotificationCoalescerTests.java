@@ -0,0 +1,81 @@
+package com.example.reactivewings.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.example.reactivewings.model.FieldChange;
+import com.example.reactivewings.model.NotificationOutboxEntry;
+
+import reactor.core.publisher.Mono;
+
+class NotificationCoalescerTests {
+
+	private final EmailSenderService emailSenderService = mock(EmailSenderService.class);
+	private final NotificationCoalescer coalescer = new NotificationCoalescer(emailSenderService);
+
+	@Test
+	void mergesOneFlightsUpdatesIntoOneEmail() {
+		when(emailSenderService.sendFlightUpdateEmailAsync(any(), any(), any(), any())).thenReturn(Mono.empty());
+
+		// Out of order on purpose: changes are merged in the order they were recorded
+		coalescer.send(List.of(
+			entry(1L, "001", 2, new FieldChange("status", "Delayed", "Boarding")),
+			entry(1L, "001", 1, new FieldChange("status", "On time", "Delayed"), new FieldChange("gate", "B1", "B4")))).block();
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<List<FieldChange>> changes = ArgumentCaptor.forClass(List.class);
+		verify(emailSenderService).sendFlightUpdateEmailAsync(eq("traveller@example.com"), eq("LY"), eq("001"), changes.capture());
+		assertThat(changes.getValue()).containsExactlyInAnyOrder(
+			new FieldChange("status", "On time", "Boarding"),
+			new FieldChange("gate", "B1", "B4"));
+	}
+
+	@Test
+	void sendsADigestForSeveralFlights() {
+		when(emailSenderService.sendFlightDigestEmailAsync(any(), anyMap())).thenReturn(Mono.empty());
+
+		coalescer.send(List.of(
+			entry(1L, "001", 1, new FieldChange("status", "On time", "Delayed")),
+			entry(2L, "315", 1, new FieldChange("gate", "C2", "C7")))).block();
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<Map<String, List<FieldChange>>> changesByFlight = ArgumentCaptor.forClass(Map.class);
+		verify(emailSenderService).sendFlightDigestEmailAsync(eq("traveller@example.com"), changesByFlight.capture());
+		assertThat(changesByFlight.getValue()).containsOnlyKeys("LY 001", "LY 315");
+	}
+
+	@Test
+	void sendsNothingWhenTheChangesCancelOut() {
+		coalescer.send(List.of(
+			entry(1L, "001", 1, new FieldChange("status", "On time", "Delayed")),
+			entry(1L, "001", 2, new FieldChange("status", "Delayed", "On time")))).block();
+
+		verifyNoInteractions(emailSenderService);
+	}
+
+	private static NotificationOutboxEntry entry(long flightId, String flightNumber, int minute, FieldChange... changes) {
+		NotificationOutboxEntry entry = new NotificationOutboxEntry();
+		entry.setId("traveller@example.com|LY|" + flightNumber + ":" + minute);
+		entry.setUserId("traveller@example.com");
+		entry.setEmail("traveller@example.com");
+		entry.setFlightId(flightId);
+		entry.setAirlineCode("LY");
+		entry.setFlightNumber(flightNumber);
+		entry.setChanges(List.of(changes));
+		entry.setCreatedAt(LocalDateTime.of(2024, 5, 1, 10, minute));
+		return entry;
+	}
+}
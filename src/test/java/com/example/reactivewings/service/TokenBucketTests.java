@@ -0,0 +1,20 @@
+package com.example.reactivewings.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTests {
+
+	@Test
+	void burstIsFreeThenRequestsArePacedAtTheRate() {
+		TokenBucket bucket = new TokenBucket(2, 2);
+
+		assertThat(bucket.reserve()).isZero();
+		assertThat(bucket.reserve()).isZero();
+		assertThat(bucket.reserve()).isBetween(Duration.ofMillis(400), Duration.ofMillis(500));
+		assertThat(bucket.reserve()).isBetween(Duration.ofMillis(900), Duration.ofMillis(1000));
+	}
+}
@@ -0,0 +1,76 @@
+package com.example.reactivewings.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.sendgrid.helpers.mail.Mail;
+import com.sendgrid.helpers.mail.objects.Content;
+import com.sendgrid.helpers.mail.objects.Email;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+class WebClientMailTransportTests {
+
+	private DisposableServer server;
+	private WebClientMailTransport transport;
+
+	@AfterEach
+	void stopServer() {
+		if (transport != null) transport.close();
+		if (server != null) server.disposeNow();
+	}
+
+	@Test
+	void postsMailWithBearerTokenAndReturnsStatus() {
+		AtomicReference<String> authorization = new AtomicReference<>();
+		AtomicReference<String> body = new AtomicReference<>();
+		server = HttpServer.create().port(0)
+			.route(routes -> routes.post("/v3/mail/send", (request, response) -> {
+				authorization.set(request.requestHeaders().get("Authorization"));
+				return request.receive().aggregate().asString()
+					.doOnNext(body::set)
+					.then(response.status(HttpResponseStatus.ACCEPTED).send());
+			}))
+			.bindNow();
+
+		assertThat(transport().send(mail()).block()).isEqualTo(202);
+
+		assertThat(authorization.get()).isEqualTo("Bearer test-key");
+		assertThat(body.get()).contains("\"personalizations\"").contains("traveller@example.com");
+	}
+
+	@Test
+	void errorStatusFailsWithDeliveryException() {
+		server = HttpServer.create().port(0)
+			.route(routes -> routes.post("/v3/mail/send", (request, response) -> request.receive().then()
+				.then(response.status(HttpResponseStatus.TOO_MANY_REQUESTS).sendString(Mono.just("slow down")).then())))
+			.bindNow();
+
+		// block() rethrows checked exceptions wrapped in a RuntimeException
+		assertThatThrownBy(() -> transport().send(mail()).block())
+			.cause()
+			.isInstanceOfSatisfying(MailDeliveryException.class, error -> {
+				assertThat(error.status()).isEqualTo(429);
+				assertThat(error.isTransient()).isTrue();
+			});
+	}
+
+	private WebClientMailTransport transport() {
+		transport = new WebClientMailTransport(WebClient.builder(), "http://localhost:" + server.port(), "test-key", 2);
+		return transport;
+	}
+
+	private static Mail mail() {
+		return new Mail(new Email("from@example.com"), "Flight update", new Email("traveller@example.com"),
+			new Content("text/html", "<p>Delayed</p>"));
+	}
+}
@@ -0,0 +1,90 @@
+package com.example.reactivewings.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.example.reactivewings.model.Flight;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class CkanRecordParserTests {
+
+	private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+	@Test
+	void bindsRecordsAndMapsDirection() {
+		List<Flight> flights = parse(response(
+			"{\"_id\": 1, \"CHOPER\": \"LY\", \"CHFLTN\": \"001\", \"CHSTOL\": \"2024-05-01T10:00:00\", \"CHAORD\": \"D\", \"CHTERM\": 3}",
+			"{\"_id\": 2, \"CHOPER\": \"BA\", \"CHFLTN\": \"165\", \"CHSTOL\": \"2024-05-01T11:30:00\", \"CHAORD\": \"A\", \"CHTERM\": 3}"));
+
+		assertThat(flights).hasSize(2);
+		assertThat(flights.get(0).getFlightId()).isEqualTo(1L);
+		assertThat(flights.get(0).getAirlineCode()).isEqualTo("LY");
+		assertThat(flights.get(0).getScheduledTime()).isEqualTo(LocalDateTime.of(2024, 5, 1, 10, 0));
+		assertThat(flights.get(0).getDirection()).isEqualTo("D");
+		assertThat(flights.get(1).getDirection()).isEqualTo("A");
+	}
+
+	@Test
+	void leavesMissingFieldsUnset() {
+		List<Flight> flights = parse(response("{\"_id\": 3, \"CHOPER\": \"LY\"}"));
+
+		assertThat(flights).singleElement().satisfies(flight -> {
+			assertThat(flight.getFlightId()).isEqualTo(3L);
+			assertThat(flight.getFlightNumber()).isNull();
+			assertThat(flight.getScheduledTime()).isNull();
+			assertThat(flight.getEstimatedTime()).isNull();
+			assertThat(flight.getDirection()).isNull();
+			assertThat(flight.getTerminal()).isZero();
+		});
+	}
+
+	@Test
+	void failsOnABadDate() {
+		CkanRecordParser<Flight> parser = new CkanRecordParser<>(objectMapper, Flight.class);
+		byte[] bytes = response("{\"_id\": 4, \"CHSTOL\": \"tomorrow morning\"}").getBytes(StandardCharsets.UTF_8);
+
+		assertThatThrownBy(() -> parser.feed(bytes)).isInstanceOf(UncheckedIOException.class);
+	}
+
+	@Test
+	void bindsRecordsSplitAcrossChunksAndIgnoresOtherObjects() {
+		String body = response(
+			"{\"_id\": 5, \"CHOPER\": \"LY\", \"CHLOC1D\": \"LONDON\", \"nested\": {\"_id\": 99}}",
+			"{\"_id\": 6, \"CHOPER\": \"W6\"}");
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+		CkanRecordParser<Flight> parser = new CkanRecordParser<>(objectMapper, Flight.class);
+		List<Flight> flights = new ArrayList<>();
+		for (int from = 0; from < bytes.length; from += 7) {
+			flights.addAll(parser.feed(Arrays.copyOfRange(bytes, from, Math.min(from + 7, bytes.length))));
+		}
+		flights.addAll(parser.endOfInput());
+
+		assertThat(flights).extracting(Flight::getFlightId).containsExactly(5L, 6L);
+		assertThat(flights.get(0).getCityEn()).isEqualTo("LONDON");
+	}
+
+	private List<Flight> parse(String body) {
+		CkanRecordParser<Flight> parser = new CkanRecordParser<>(objectMapper, Flight.class);
+		List<Flight> flights = new ArrayList<>(parser.feed(body.getBytes(StandardCharsets.UTF_8)));
+		flights.addAll(parser.endOfInput());
+		return flights;
+	}
+
+	// The fields list holds objects too, so records are only taken from result.records
+	private static String response(String... records) {
+		return "{\"success\": true, \"result\": {\"fields\": [{\"id\": \"_id\", \"type\": \"int\"}], \"records\": ["
+			+ String.join(", ", records)
+			+ "], \"total\": " + records.length + "}}";
+	}
+}
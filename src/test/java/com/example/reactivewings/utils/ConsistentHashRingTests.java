@@ -0,0 +1,46 @@
+package com.example.reactivewings.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ConsistentHashRingTests {
+
+	@Test
+	void spreadsKeysEvenlyAndIgnoresMemberOrder() {
+		ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+		ConsistentHashRing reordered = new ConsistentHashRing(List.of("c", "a", "b"), 128);
+
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < 30000; i++) {
+			String key = "user" + i + "@example.com";
+			assertThat(reordered.ownerOf(key)).isEqualTo(ring.ownerOf(key));
+			counts.merge(ring.ownerOf(key), 1, Integer::sum);
+		}
+
+		assertThat(counts).containsOnlyKeys("a", "b", "c");
+		assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(8000, 12000));
+	}
+
+	@Test
+	void removingANodeOnlyMovesItsKeys() {
+		ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"), 64);
+		ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b"), 64);
+
+		for (int i = 0; i < 10000; i++) {
+			String key = "user" + i;
+			if (!before.ownerOf(key).equals("c")) {
+				assertThat(after.ownerOf(key)).isEqualTo(before.ownerOf(key));
+			}
+		}
+	}
+
+	@Test
+	void emptyRingHasNoOwner() {
+		assertThat(ConsistentHashRing.EMPTY.ownerOf("user")).isNull();
+	}
+}
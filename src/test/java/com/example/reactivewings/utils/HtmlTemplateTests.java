@@ -0,0 +1,44 @@
+package com.example.reactivewings.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.reactivewings.model.FieldChange;
+
+class HtmlTemplateTests {
+
+	@Test
+	void escapesValuesButNotFragments() {
+		HtmlTemplate item = HtmlTemplate.compile("<li>{{text}}</li>", "text");
+		HtmlTemplate list = HtmlTemplate.compile("<h1>{{title}}</h1><ul>{{items}}</ul>", "title", "items");
+
+		String html = list.render("Tom & \"Jerry\" <3", item.with("<b>'x'</b>"));
+
+		assertThat(html).isEqualTo("<h1>Tom &amp; &quot;Jerry&quot; &lt;3</h1><ul><li>&lt;b&gt;&#39;x&#39;&lt;/b&gt;</li></ul>");
+	}
+
+	@Test
+	void slotsCanRepeatAndNullRendersEmpty() {
+		HtmlTemplate template = HtmlTemplate.compile("{{a}}-{{ b }}-{{a}}", "a", "b");
+
+		assertThat(template.render("x", null)).isEqualTo("x--x");
+		assertThat(template.render(1, 2)).isEqualTo("1-2-1");
+	}
+
+	@Test
+	void rejectsUndeclaredSlots() {
+		assertThatThrownBy(() -> HtmlTemplate.compile("{{missing}}", "present"))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void flightUpdateEscapesChangedValues() {
+		String html = EmailTemplates.flightUpdateHtml("LY", "001", List.of(new FieldChange("סטטוס", "<on time>", "delayed")));
+
+		assertThat(html).contains("<b>LY 001</b>").contains("סטטוס: &lt;on time&gt; → delayed<br>");
+	}
+}
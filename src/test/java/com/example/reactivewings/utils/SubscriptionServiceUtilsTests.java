@@ -0,0 +1,33 @@
+package com.example.reactivewings.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.reactivewings.model.FieldChange;
+
+class SubscriptionServiceUtilsTests {
+
+	@Test
+	void mergeKeepsFirstOldAndLastNewValuePerField() {
+		List<FieldChange> merged = SubscriptionServiceUtils.mergeChanges(List.of(
+			List.of(new FieldChange("estimated", "10:00", "10:20")),
+			List.of(new FieldChange("estimated", "10:20", "10:45"), new FieldChange("gate", "B1", "B4")),
+			List.of(new FieldChange("estimated", "10:45", "11:05"))));
+
+		assertThat(merged).containsExactly(
+			new FieldChange("estimated", "10:00", "11:05"),
+			new FieldChange("gate", "B1", "B4"));
+	}
+
+	@Test
+	void mergeDropsFieldsThatChangedBack() {
+		List<FieldChange> merged = SubscriptionServiceUtils.mergeChanges(List.of(
+			List.of(new FieldChange("status", "On time", "Delayed")),
+			List.of(new FieldChange("status", "Delayed", "On time"))));
+
+		assertThat(merged).isEmpty();
+	}
+}
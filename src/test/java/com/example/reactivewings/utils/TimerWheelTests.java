@@ -0,0 +1,56 @@
+package com.example.reactivewings.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class TimerWheelTests {
+
+	@Test
+	void expiresEntriesAtTheirTickAcrossLevels() {
+		// 10 ms ticks and 8 slots: level 0 spans 80 ms, level 1 640 ms, level 2 5.12 s
+		TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+		wheel.schedule("soon", 30);
+		wheel.schedule("level1", 300);
+		wheel.schedule("level2", 4000);
+
+		assertThat(wheel.advance(20)).isEmpty();
+		assertThat(wheel.advance(30)).containsExactly("soon");
+		assertThat(wheel.advance(299)).isEmpty();
+		assertThat(wheel.advance(300)).containsExactly("level1");
+		assertThat(wheel.advance(3990)).isEmpty();
+		assertThat(wheel.advance(4000)).containsExactly("level2");
+		assertThat(wheel.size()).isZero();
+	}
+
+	@Test
+	void cancelledAndRescheduledEntriesFollowTheirNewDeadline() {
+		TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+		TimerWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 100);
+		TimerWheel.Timeout<String> moved = wheel.schedule("moved", 2000);
+
+		assertThat(wheel.cancel(cancelled)).isTrue();
+		wheel.reschedule(moved, 150);
+
+		assertThat(wheel.advance(140)).isEmpty();
+		assertThat(wheel.advance(150)).containsExactly("moved");
+		assertThat(wheel.advance(3000)).isEmpty();
+		assertThat(wheel.isPending(moved)).isFalse();
+	}
+
+	@Test
+	void pastDeadlinesExpireOnTheNextAdvance() {
+		TimerWheel<String> wheel = new TimerWheel<>(10, 8, 1000);
+		wheel.schedule("late", 500);
+
+		assertThat(wheel.advance(1000)).containsExactly("late");
+	}
+
+	@Test
+	void catchesUpOnEveryTickMissedBetweenAdvances() {
+		TimerWheel<Integer> wheel = new TimerWheel<>(10, 4, 0);
+		for (int i = 1; i <= 100; i++) wheel.schedule(i, i * 37L);
+
+		assertThat(wheel.advance(37 * 100)).hasSize(100).isSorted();
+	}
+}